@@ -4,5 +4,67 @@ public class SolverConfig {
     public static boolean DEBUG_MODE = true;
     public static boolean SUIT_ISOMORPHISM = true;
     public static boolean STORE_EV = false;
+
+    // all-in before the river ends in an AllInNode that sums the runouts, instead of a chance subtree
+    public static boolean ALL_IN_NODES = true;
+
+    // trainables of action nodes store one hand per orbit of the suit swaps the path is symmetric in,
+    // see HandSymmetry
+    public static boolean HAND_SYMMETRY = false;
+
+    // trainables of action nodes leave out the hands that overlap the node's board
+    public static boolean COMPACT_BOARD_HANDS = true;
+
     public static int RAISE_LIMIT = 5;
+
+    // training stops at the target exploitability in % of the pot, checked every interval iterations,
+    // or when the time budget is used up
+    public static long TIME_BUDGET_MS = 60000;
+    public static int MAX_ITERATIONS = 1000;
+    public static int EXPLOITABILITY_INTERVAL = 10;
+    public static float TARGET_EXPLOITABILITY = 0.5f;
+
+    public enum Storage { HEAP, OFF_HEAP, QUANTIZED }
+
+    // OFF_HEAP keeps the trainables in native memory, QUANTIZED stores regrets and average strategy as
+    // 16 bit values. Both traverse the object tree instead of a compiled tree.
+    // Native memory is limited by -XX:MaxDirectMemorySize, which defaults to the maximum heap size
+    public static Storage STORAGE = Storage.HEAP;
+
+    public static boolean COMPILED_TREE = true;
+
+    // the builder keeps the object graph of a compiled tree for exploring the solution. Without it only the
+    // compiled arrays stay in memory, GameTreeBuilder.getRoot returns null. Set by the explorer's launcher
+    public static boolean KEEP_OBJECT_TREE = false;
+
+    // children no opponent hand reaches are not traversed, the skip is recorded at the child and reaches
+    // the trainables of the traversing player in its subtree on later visits
+    public static boolean SKIP_UNREACHED_SUBTREES = true;
+
+    // use the Vector API for the float loops of the traversal, read once on first use
+    public static boolean VECTORIZED = true;
+
+    // trainables do not cache the current strategy but regret match it on the next read, compiled
+    // trees save the strategy region of the slab for a regret matching pass per node visit
+    public static boolean LAZY_STRATEGY_NORMALIZATION = false;
+
+    // HandRanks lookup table of the 7 card evaluator, mapped on its first use. Without a file at the
+    // path the table is read from the cache path, and generated there once if it does not exist
+    public static String HAND_RANKS_PATH = "res/HandRanks.dat";
+    public static String HAND_RANKS_CACHE_PATH = System.getProperty("user.home") + "/.cache/GTOSolver/HandRanks.dat";
+    public static boolean GENERATE_HAND_RANKS = true;
+
+    // showdown tables of all solves share this budget, over it boards not used since the clock hand last
+    // passed them are evicted, see ShowdownTableCache. Read once on first use
+    public static long SHOWDOWN_TABLE_CACHE_BYTES = 256L << 20;
+
+    // runout equities of the all-in boards of a RangeManager, boards over the budget sum their runouts
+    public static long RUNOUT_EQUITY_BYTES = 256L << 20;
+
+    // build the showdown tables of all river boards of the tree while it is built, instead of in the first iteration
+    public static boolean PREWARM_SHOWDOWN_TABLES = true;
+
+    public static boolean PARALLEL_TRAVERSAL = true;
+    public static int PARALLEL_SUBTREE_CUTOFF = 2000;
+    public static int NUM_THREADS = Runtime.getRuntime().availableProcessors();
 }
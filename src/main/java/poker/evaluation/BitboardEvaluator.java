@@ -0,0 +1,125 @@
+package poker.evaluation;
+
+/*
+ * 7 card evaluator on the card masks of the tree (bit 4 * rank + suit), without
+ * tables of hands and without allocation. The mask is split into 13 bit rank
+ * masks per suit, pairs, trips and quads are combined from them bitwise and
+ * straights and kickers are read from tables indexed by a rank mask.
+ *
+ * Values order hands like HandEvaluator does, but are not the same numbers: the
+ * category (1 high card to 9 straight flush) is value >>> 20, below it are the
+ * ranks deciding within the category, 4 bits each, most significant first.
+ * BitboardEvaluatorTest checks the order against HandEvaluator on all hands.
+ */
+public class BitboardEvaluator {
+
+    // highest rank of the best straight of a rank mask, the wheel counts as 3, -1 if there is none
+    private static final byte[] STRAIGHT_HIGH = new byte[1 << 13];
+
+    // the up to 5 highest ranks of a rank mask, 4 bits each with the highest in bits 16 to 19
+    private static final int[] TOP_RANKS = new int[1 << 13];
+
+    static {
+        for (int ranks = 0; ranks < 1 << 13; ranks++) {
+            STRAIGHT_HIGH[ranks] = -1;
+            for (int high = 12; high >= 4; high--) {
+                int straight = 0x1f << high - 4;
+                if ((ranks & straight) == straight) {
+                    STRAIGHT_HIGH[ranks] = (byte) high;
+                    break;
+                }
+            }
+            int wheel = 1 << 12 | 0xf;
+            if (STRAIGHT_HIGH[ranks] < 0 && (ranks & wheel) == wheel)
+                STRAIGHT_HIGH[ranks] = 3;
+
+            int packed = 0;
+            int count = 0;
+            for (int rank = 12; rank >= 0 && count < 5; rank--) {
+                if ((ranks & 1 << rank) != 0) {
+                    packed |= rank << 4 * (4 - count);
+                    count++;
+                }
+            }
+            TOP_RANKS[ranks] = packed;
+        }
+    }
+
+    public static int getHandValue(byte card1, byte card2, long board) {
+        return getHandValue(board | 1L << card1 | 1L << card2);
+    }
+
+    public static int getHandValue(long cards) {
+        int suit0 = suitRanks(cards);
+        int suit1 = suitRanks(cards >>> 1);
+        int suit2 = suitRanks(cards >>> 2);
+        int suit3 = suitRanks(cards >>> 3);
+
+        // 7 cards have at most one suit of 5, which rules out quads and full houses
+        int flush = Integer.bitCount(suit0) >= 5 ? suit0
+                : Integer.bitCount(suit1) >= 5 ? suit1
+                : Integer.bitCount(suit2) >= 5 ? suit2
+                : Integer.bitCount(suit3) >= 5 ? suit3 : 0;
+
+        if (flush != 0) {
+            int high = STRAIGHT_HIGH[flush];
+            if (high >= 0)
+                return 9 << 20 | high << 16;
+            return 6 << 20 | TOP_RANKS[flush];
+        }
+
+        int ranks = suit0 | suit1 | suit2 | suit3;
+        int quads = suit0 & suit1 & suit2 & suit3;
+        int trips = suit0 & suit1 & (suit2 | suit3) | suit2 & suit3 & (suit0 | suit1);
+        int pairs = suit0 & suit1 | suit2 & suit3 | (suit0 | suit1) & (suit2 | suit3);
+
+        if (quads != 0) {
+            int quadsRank = highestRank(quads);
+            return 8 << 20 | quadsRank << 16 | (TOP_RANKS[ranks & ~(1 << quadsRank)] >>> 16) << 12;
+        }
+
+        // a second trips counts as the pair
+        int tripsRank = trips != 0 ? highestRank(trips) : -1;
+        if (tripsRank >= 0 && (pairs & ~(1 << tripsRank)) != 0)
+            return 7 << 20 | tripsRank << 16 | highestRank(pairs & ~(1 << tripsRank)) << 12;
+
+        int high = STRAIGHT_HIGH[ranks];
+        if (high >= 0)
+            return 5 << 20 | high << 16;
+
+        if (tripsRank >= 0)
+            return 4 << 20 | tripsRank << 16 | (TOP_RANKS[ranks & ~(1 << tripsRank)] >>> 12) << 8;
+
+        if (pairs != 0) {
+            int pair1 = highestRank(pairs);
+            int pairs2 = pairs & ~(1 << pair1);
+
+            if (pairs2 != 0) {
+                int pair2 = highestRank(pairs2);
+                return 3 << 20 | pair1 << 16 | pair2 << 12
+                        | (TOP_RANKS[ranks & ~(1 << pair1 | 1 << pair2)] >>> 16) << 8;
+            }
+            return 2 << 20 | pair1 << 16 | (TOP_RANKS[ranks & ~(1 << pair1)] >>> 8) << 4;
+        }
+
+        return 1 << 20 | TOP_RANKS[ranks];
+    }
+
+    public static int getCategory(int value) {
+        return value >>> 20;
+    }
+
+    // gathers the bits 4 * rank of the mask into a 13 bit rank mask
+    private static int suitRanks(long cards) {
+        long ranks = cards & 0x1111111111111L;
+        ranks = (ranks | ranks >>> 3) & 0x0303030303030303L;
+        ranks = (ranks | ranks >>> 6) & 0x000f000f000f000fL;
+        ranks = (ranks | ranks >>> 12) & 0x000000ff000000ffL;
+        ranks = (ranks | ranks >>> 24) & 0xffff;
+        return (int) ranks;
+    }
+
+    private static int highestRank(int ranks) {
+        return 31 - Integer.numberOfLeadingZeros(ranks);
+    }
+}
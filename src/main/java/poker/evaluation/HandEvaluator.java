@@ -1,57 +1,114 @@
 package poker.evaluation;
 
-import java.io.*;
-import java.nio.ByteBuffer;
+import java.io.IOException;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
+import poker.SolverConfig;
+
+/*
+ * 7 card evaluator on the HandRanks state machine table. The table file is
+ * mapped read-only instead of read into the heap, the mapping is shared by all
+ * threads and solvers of the process. It is loaded on the first getInstance
+ * call from SolverConfig.HAND_RANKS_PATH, or from the cache path, where it is
+ * generated if neither file exists.
+ */
 public class HandEvaluator
 {
-	int[] HR;
-	
-    private static HandEvaluator instance = null; 
- 
-    public static HandEvaluator getInstance() 
-    { 
-        if (instance == null) 
-        	instance = new HandEvaluator(); 
-  
-        return instance; 
-    } 
-	
-    void initTheEvaluator()
+    // number of ints of the table, the root state is at 53
+    public static final int TABLE_SIZE = 32487834;
+
+    IntBuffer HR;
+
+    private static class Holder
     {
-		try (
-			InputStream inputStream = new FileInputStream("res/HandRanks.dat");
-		)
-		{
-			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-			
-			int nRead;
-			byte[] data = new byte[16384];
-
-			while ((nRead = inputStream.read(data, 0, data.length)) != -1)
-			{
-				buffer.write(data, 0, nRead);
-			}
-			
-			IntBuffer intBuf = ByteBuffer.wrap(buffer.toByteArray())
-								.order(ByteOrder.LITTLE_ENDIAN)
-								.asIntBuffer();
-			HR = new int[intBuf.remaining()];
-			intBuf.get(HR);
-		}
-		catch (IOException e)
-		{
-			e.printStackTrace();
-		}
+        static final HandEvaluator INSTANCE = new HandEvaluator(findTable());
     }
-    
-    public HandEvaluator()
+
+    static Path findTable()
     {
-    	initTheEvaluator();
+        Path path = Path.of(SolverConfig.HAND_RANKS_PATH);
+        if (Files.exists(path))
+            return path;
+
+        Path cachePath = Path.of(SolverConfig.HAND_RANKS_CACHE_PATH);
+        if (!Files.exists(cachePath) && SolverConfig.GENERATE_HAND_RANKS)
+        {
+            System.out.println("generating HandRanks table at " + cachePath);
+            try
+            {
+                HandRanksGenerator.generate(cachePath);
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+        }
+        return cachePath;
     }
-    
+
+    public static HandEvaluator getInstance()
+    {
+        return Holder.INSTANCE;
+    }
+
+    // leaves the evaluator unloaded if the file cannot be read or is not a HandRanks table
+    void initTheEvaluator(Path path)
+    {
+        if (!Files.exists(path))
+        {
+            System.err.println("no HandRanks table at " + path);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            if (channel.size() != 4L * TABLE_SIZE)
+            {
+                System.err.println(path + " is not a HandRanks table, expected " + 4L * TABLE_SIZE
+                        + " bytes but got " + channel.size());
+                return;
+            }
+
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            IntBuffer table = buffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+
+            if (!isValid(table))
+            {
+                System.err.println(path + " is not a HandRanks table, invalid root state");
+                return;
+            }
+            HR = table;
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    // the transitions of the root state have to be states behind it
+    static boolean isValid(IntBuffer table)
+    {
+        for (int card = 1; card <= 52; card++)
+        {
+            int state = table.get(53 + card);
+            if (state <= 53 || state >= TABLE_SIZE - 52)
+                return false;
+        }
+        return true;
+    }
+
+    public HandEvaluator(Path path)
+    {
+        initTheEvaluator(path);
+    }
+
     public void test()
     {
         // Now let's enumerate every possible 7-card poker hand
@@ -64,28 +121,28 @@ public class HandEvaluator
 
         for (c0 = 1; c0 < 47; c0++)
         {
-            u0 = HR[53+c0];
+            u0 = HR.get(53+c0);
             for (c1 = c0+1; c1 < 48; c1++)
             {
-                u1 = HR[u0+c1];
+                u1 = HR.get(u0+c1);
                 for (c2 = c1+1; c2 < 49; c2++)
                 {
-                    u2 = HR[u1+c2];
+                    u2 = HR.get(u1+c2);
                     for (c3 = c2+1; c3 < 50; c3++)
                     {
-                        u3 = HR[u2+c3];
+                        u3 = HR.get(u2+c3);
                         for (c4 = c3+1; c4 < 51; c4++)
                         {
-                            u4 = HR[u3+c4];
+                            u4 = HR.get(u3+c4);
                             for (c5 = c4+1; c5 < 52; c5++)
                             {
-                                u5 = HR[u4+c5];
+                                u5 = HR.get(u4+c5);
                                 for (c6 = c5+1; c6 < 53; c6++)
                                 {
-                                    handTypeSum[HR[u5+c6] >> 12]++;
+                                    handTypeSum[HR.get(u5+c6) >> 12]++;
 
                                     // JMD: The above line of code is equivalent to:
-                                    //int finalValue = HR[u5+c6];
+                                    //int finalValue = HR.get(u5+c6);
                                     //int handCategory = finalValue >> 12;
                                     //handTypeSum[handCategory]++;
 
@@ -120,14 +177,19 @@ public class HandEvaluator
         }
     }
     
+    public boolean isLoaded()
+    {
+        return HR != null;
+    }
+
     public int getHandValue(int holeCard1, int holeCard2, int[] board)
     {
-	    int p = HR[53 + holeCard1+1];
-	    p = HR[p + holeCard2+1];
-	    p = HR[p + board[0]+1];
-	    p = HR[p + board[1]+1];
-	    p = HR[p + board[2]+1];
-	    p = HR[p + board[3]+1];
-	    return HR[p + board[4]+1];
+	    int p = HR.get(53 + holeCard1+1);
+	    p = HR.get(p + holeCard2+1);
+	    p = HR.get(p + board[0]+1);
+	    p = HR.get(p + board[1]+1);
+	    p = HR.get(p + board[2]+1);
+	    p = HR.get(p + board[3]+1);
+	    return HR.get(p + board[4]+1);
     }
 }
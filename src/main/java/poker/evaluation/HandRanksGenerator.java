@@ -0,0 +1,342 @@
+package poker.evaluation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/*
+ * Builds the HandRanks table of the 2+2 evaluator with the state numbering and
+ * binary layout of its original generator.
+ *
+ * A state is a set of up to 6 cards, its ID holds the cards sorted descending
+ * with 8 bits each, rank 1 to 13 in the upper and suit 1 to 4 in the lower 4
+ * bits. Suits that can no longer make a flush are set to 0, so sets of cards
+ * that rank the same share a state. States are numbered in ascending ID order.
+ * HR[53 * state + 53 + card] is the next state times 53 plus 53, or the hand
+ * value once 7 cards are dealt. HR[53 * state + 53] is the value of states of 5
+ * and 6 cards. Hand values are category << 12 | rank within the category, the
+ * categories go from 1 (high card) to 9 (straight flush).
+ */
+public class HandRanksGenerator {
+
+    // number of distinct 5 card hand values per category, 7462 in total
+    static final int[] CATEGORY_SIZES = { 0, 1277, 2860, 858, 858, 10, 1277, 156, 156, 10 };
+
+    static final int NUM_STATES = HandEvaluator.TABLE_SIZE / 53 - 1;
+
+    // keys of all 5 card hand values in ascending order, see handKey
+    private final int[] valueKeys = computeValueKeys();
+    private final int[] categoryStart = new int[10];
+
+    private long[] ids;
+
+    public HandRanksGenerator() {
+        for (int category = 1; category < 10; category++)
+            categoryStart[category] = categoryStart[category - 1] + CATEGORY_SIZES[category - 1];
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path path = Path.of(args.length > 0 ? args[0] : "res/HandRanks.dat");
+
+        long start = System.currentTimeMillis();
+        generate(path);
+        System.out.println("wrote " + path + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    // writes the table to a temporary file next to path and moves it there, readers never see a partial table
+    public static void generate(Path path) throws IOException {
+        int[] table = new HandRanksGenerator().computeTable();
+
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+                for (int i = 0; i < table.length;) {
+                    int length = Math.min(buffer.capacity() / 4, table.length - i);
+                    buffer.clear();
+                    buffer.asIntBuffer().put(table, i, length);
+                    buffer.limit(4 * length);
+
+                    while (buffer.hasRemaining())
+                        channel.write(buffer);
+                    i += length;
+                }
+                channel.force(true);
+            }
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public int[] computeTable() {
+        ids = computeIds();
+        if (ids.length != NUM_STATES)
+            throw new IllegalStateException("expected " + NUM_STATES + " states but got " + ids.length);
+
+        int[] table = new int[HandEvaluator.TABLE_SIZE];
+        IntStream.range(0, ids.length).parallel().forEach(state -> computeTransitions(state, table));
+        return table;
+    }
+
+    // all IDs of up to 6 cards reachable from the empty set, including the empty set
+    private static long[] computeIds() {
+        Set<Long> ids = new TreeSet<>();
+        ids.add(0L);
+
+        long[] level = { 0 };
+        for (int numCards = 1; numCards < 7; numCards++) {
+            Set<Long> nextLevel = ConcurrentHashMap.newKeySet();
+
+            Arrays.stream(level).parallel().forEach(id -> {
+                for (int card = 1; card < 53; card++) {
+                    long nextId = makeId(id, card);
+                    if (nextId != 0)
+                        nextLevel.add(nextId);
+                }
+            });
+
+            ids.addAll(nextLevel);
+            level = nextLevel.stream().mapToLong(Long::longValue).toArray();
+        }
+
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private void computeTransitions(int state, int[] table) {
+        long id = ids[state];
+        int numCards = countCards(id) + 1;
+
+        for (int card = 1; card < 53; card++) {
+            long nextId = makeId(id, card);
+
+            if (numCards < 7)
+                table[53 * state + 53 + card] = nextId == 0 ? 53 : 53 * Arrays.binarySearch(ids, nextId) + 53;
+            else
+                table[53 * state + 53 + card] = evaluate(nextId);
+        }
+
+        if (numCards == 6 || numCards == 7)
+            table[53 * state + 53] = evaluate(id);
+    }
+
+    static int countCards(long id) {
+        int numCards = 0;
+        for (; id != 0; id >>>= 8)
+            numCards++;
+        return numCards;
+    }
+
+    /*
+     * ID of the state of id plus card (1 to 52, 4 * rank + suit + 1), 0 if the
+     * card is already part of it or a rank would appear more than 4 times.
+     */
+    static long makeId(long id, int card) {
+        int[] cards = new int[8];
+        int[] suitCount = new int[5];
+        int[] rankCount = new int[14];
+
+        for (int i = 0; i < 6; i++)
+            cards[i + 1] = (int) (id >>> 8 * i) & 0xff;
+
+        card--;
+        cards[0] = ((card >> 2) + 1 << 4) + (card & 3) + 1;
+
+        int numCards;
+        boolean duplicate = false;
+        for (numCards = 0; cards[numCards] != 0; numCards++) {
+            suitCount[cards[numCards] & 0xf]++;
+            rankCount[cards[numCards] >> 4 & 0xf]++;
+            if (numCards > 0 && cards[0] == cards[numCards])
+                duplicate = true;
+        }
+
+        if (duplicate)
+            return 0;
+
+        if (numCards > 4) {
+            for (int rank = 1; rank < 14; rank++) {
+                if (rankCount[rank] > 4)
+                    return 0;
+            }
+        }
+
+        // a suit is kept if it can still make a flush with the cards to come
+        int needSuited = numCards - 2;
+        if (needSuited > 1) {
+            for (int i = 0; i < numCards; i++) {
+                if (suitCount[cards[i] & 0xf] < needSuited)
+                    cards[i] &= 0xf0;
+            }
+        }
+
+        Arrays.sort(cards, 0, 7);
+
+        long nextId = 0;
+        for (int i = 0; i < 7; i++)
+            nextId |= (long) cards[6 - i] << 8 * i;
+        return nextId;
+    }
+
+    // value of the best 5 card hand of the state, cards without a suit cannot be part of a flush
+    int evaluate(long id) {
+        if (id == 0)
+            return 0;
+
+        int[] rankCount = new int[13];
+        int[] suitRanks = new int[5];
+        int[] suitCount = new int[5];
+
+        for (; id != 0; id >>>= 8) {
+            int card = (int) id & 0xff;
+            int rank = (card >> 4) - 1;
+            int suit = card & 0xf;
+
+            rankCount[rank]++;
+            suitRanks[suit] |= 1 << rank;
+            suitCount[suit]++;
+        }
+
+        int flushRanks = 0;
+        for (int suit = 1; suit < 5; suit++) {
+            if (suitCount[suit] >= 5)
+                flushRanks = suitRanks[suit];
+        }
+
+        int key = handKey(rankCount, flushRanks);
+        int category = key >>> 20;
+        int idx = Arrays.binarySearch(valueKeys, key);
+
+        return category << 12 | idx - categoryStart[category] + 1;
+    }
+
+    /*
+     * Orders hands of 5 to 7 cards by their best 5 cards: the category in the
+     * upper bits, then the ranks (0 to 12) that decide within the category with 4
+     * bits each, most significant first. flushRanks are the ranks of a suit with
+     * at least 5 cards, 0 if there is none. With 7 cards a flush excludes quads
+     * and full houses, so it is checked first.
+     */
+    static int handKey(int[] rankCount, int flushRanks) {
+        if (flushRanks != 0) {
+            int high = straightHigh(flushRanks);
+            if (high >= 0)
+                return key(9, high, 1);
+            return key(6, highRanks(0, flushRanks, 5), 5);
+        }
+
+        // a second trips counts as a pair
+        int ranks = 0;
+        int quads = -1, trips = -1, pair1 = -1, pair2 = -1;
+        for (int rank = 12; rank >= 0; rank--) {
+            if (rankCount[rank] > 0)
+                ranks |= 1 << rank;
+
+            if (rankCount[rank] == 4)
+                quads = rank;
+            else if (rankCount[rank] == 3 && trips < 0)
+                trips = rank;
+            else if (rankCount[rank] >= 2 && pair1 < 0)
+                pair1 = rank;
+            else if (rankCount[rank] >= 2 && pair2 < 0)
+                pair2 = rank;
+        }
+
+        if (quads >= 0)
+            return key(8, highRanks(quads, ranks & ~(1 << quads), 1), 2);
+
+        if (trips >= 0 && pair1 >= 0)
+            return key(7, trips << 4 | pair1, 2);
+
+        int high = straightHigh(ranks);
+        if (high >= 0)
+            return key(5, high, 1);
+
+        if (trips >= 0)
+            return key(4, highRanks(trips, ranks & ~(1 << trips), 2), 3);
+
+        if (pair2 >= 0)
+            return key(3, highRanks(pair1 << 4 | pair2, ranks & ~(1 << pair1 | 1 << pair2), 1), 3);
+
+        if (pair1 >= 0)
+            return key(2, highRanks(pair1, ranks & ~(1 << pair1), 3), 4);
+
+        return key(1, highRanks(0, ranks, 5), 5);
+    }
+
+    // highest card of the best straight within the ranks, the wheel counts as 3, -1 if there is none
+    static int straightHigh(int ranks) {
+        for (int high = 12; high >= 4; high--) {
+            int straight = 0x1f << high - 4;
+            if ((ranks & straight) == straight)
+                return high;
+        }
+
+        int wheel = 1 << 12 | 0xf;
+        return (ranks & wheel) == wheel ? 3 : -1;
+    }
+
+    // appends the count highest of ranks to packed, 4 bits per rank
+    static int highRanks(int packed, int ranks, int count) {
+        for (int rank = 12; rank >= 0 && count > 0; rank--) {
+            if ((ranks & 1 << rank) != 0) {
+                packed = packed << 4 | rank;
+                count--;
+            }
+        }
+        return packed;
+    }
+
+    private static int key(int category, int packed, int numRanks) {
+        return category << 20 | packed << 4 * (5 - numRanks);
+    }
+
+    // keys of all distinct 5 card hands, enumerated as rank multisets with and without a flush
+    private static int[] computeValueKeys() {
+        Set<Integer> keys = new TreeSet<>();
+        int[] rankCount = new int[13];
+        addValueKeys(keys, rankCount, 0, 5);
+
+        int[] valueKeys = keys.stream().mapToInt(Integer::intValue).toArray();
+        if (valueKeys.length != Arrays.stream(CATEGORY_SIZES).sum())
+            throw new IllegalStateException("expected 7462 hand values but got " + valueKeys.length);
+        return valueKeys;
+    }
+
+    private static void addValueKeys(Set<Integer> keys, int[] rankCount, int rank, int remaining) {
+        if (remaining == 0) {
+            keys.add(handKey(rankCount, 0));
+
+            int ranks = 0;
+            for (int r = 0; r < 13; r++) {
+                if (rankCount[r] == 1)
+                    ranks |= 1 << r;
+            }
+            if (Integer.bitCount(ranks) == 5)
+                keys.add(handKey(rankCount, ranks));
+            return;
+        }
+        if (rank == 13)
+            return;
+
+        for (int count = 0; count <= Math.min(4, remaining); count++) {
+            rankCount[rank] = count;
+            addValueKeys(keys, rankCount, rank + 1, remaining - count);
+        }
+        rankCount[rank] = 0;
+    }
+}
@@ -1,7 +1,7 @@
 package poker.explorer;
 
-import poker.training.Trainable;
 import poker.tree.ActionNode;
+import poker.tree.AllInNode;
 import poker.tree.ChanceNode;
 import poker.tree.GameTreeNode;
 import poker.tree.ShowdownNode;
@@ -101,7 +101,6 @@ public class GameTreeExplorer {
         } else if (node instanceof ActionNode) {
 
             ActionNode actionNode = (ActionNode) node;
-            Trainable trainable = actionNode.getTrainable();
 
             int nodePlr = actionNode.getNodePlayer();
             int numActions = actionNode.getChildren().size();
@@ -109,7 +108,7 @@ public class GameTreeExplorer {
             byte[] nodePlrHands = rangeManager.getHands(nodePlr);
             float[] oopReachProbs = new float[rangeManager.getNumHands(0)];
 
-            float[] optimalStrategy = trainable.getAverageStrategy();
+            float[] optimalStrategy = actionNode.getAverageStrategy();
             for (int a = 0; a < numActions; a++) {
                 GameTreeNode child = children.get(a);
 
@@ -122,6 +121,8 @@ public class GameTreeExplorer {
                     type = "(terminal) ";
                 } else if (child instanceof ShowdownNode) {
                     type = "(showdown) ";
+                } else if (child instanceof AllInNode) {
+                    type = "(all-in) ";
                 }
 
                 System.out.print("\n" + edgeLabels.get(a) + " " + type + "\n" + debugInfo + "\n");
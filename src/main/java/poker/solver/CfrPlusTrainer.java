@@ -2,13 +2,12 @@ package poker.solver;
 
 import javafx.application.Application;
 import javafx.stage.Stage;
+import poker.SolverConfig;
 import poker.explorer.GameTreeExplorer;
 import poker.tree.GameState;
 import poker.tree.GameTreeBuildSettings;
 import poker.tree.GameTreeBuilder;
 import poker.tree.GameTreeNode;
-import poker.tree.Street;
-import poker.util.CardUtility;
 import poker.util.RangeManager;
 
 public class CfrPlusTrainer extends Application {
@@ -20,40 +19,38 @@ public class CfrPlusTrainer extends Application {
     @Override
     public void start(Stage primaryStage) throws Exception {
 
-        GameState gameState = new GameState(Street.FLOP,
-                CardUtility.boardArrToLong(CardUtility.cardFromString("Qs"),
-                        CardUtility.cardFromString("Jh"), CardUtility.cardFromString("2h")),
-                180,
-                new int[] { 910, 910 });
+        GameState gameState = ExampleSpot.flop();
+        GameTreeBuildSettings settings = ExampleSpot.settings();
+        RangeManager rangeManager = ExampleSpot.rangeManager();
 
-        GameTreeBuildSettings settings = new GameTreeBuildSettings();
-        settings.flopBetSizes = new float[] { 0.52f };
-        settings.turnBetSizes = new float[] { 0.55f };
-        settings.riverBetSizes = new float[] { 0.70f };
-
-        settings.flopRaiseSizes = new float[] { 0.45f };
-        settings.turnRaiseSizes = new float[] { 0.45f };
-        settings.riverRaiseSizes = new float[] { 0.45f };
-
-        RangeManager rangeManager = new RangeManager("AA,KK,QQ,JJ,TT,99,88,AK,AQ,AJ,KQ,KJ,KTo,QJ,QT,JT,J9,T9,98", "AA,KK,QQ,JJ,TT,99,88,AK,AQ,AJs,KQ,KJs,KTs,QJ,QTs,JT,J9s,T9,98");
+        // the explorer walks the object graph
+        SolverConfig.KEEP_OBJECT_TREE = true;
 
         GameTreeBuilder builder = new GameTreeBuilder(gameState, settings, rangeManager);
         builder.build();
         GameTreeNode root = builder.getRoot();
 
         System.out.println("nodes " + builder.getNumberNodes());
-        System.out.println("Start Training");
-
-        int i = 1;
-        int plr = 0;
-        for (; i <= 50; i++, plr = i % 2) {
-            root.computeCFValuesRecursive(plr, rangeManager.getInitialWeights(1 - plr), i);
-            System.out.println("round " + i);
-        }
-    
-        GameTreeExplorer viz = new GameTreeExplorer(root, rangeManager, 0);
-
-        Thread t = new Thread(() -> viz.awaitCommand());
+        System.out.println("showdown tables of " + builder.getNumRiverBoards() + " river boards in "
+                + builder.getShowdownTablesMillis() + "ms");
+
+        // solve off the JavaFX thread, the explorer starts once the solve stopped. The tree is released when
+        // the explorer is done with it
+        Thread t = new Thread(() -> {
+            try (Solver solver = new Solver(builder, rangeManager, gameState.pot)) {
+                System.out.println("Start Training");
+
+                SolveReport report = solver.solve(SolverConfig.TIME_BUDGET_MS, SolverConfig.TARGET_EXPLOITABILITY,
+                        new Solver.Cancellation());
+                for (SolveReport.Checkpoint checkpoint : report.checkpoints)
+                    System.out.println("round " + checkpoint.iteration + ", " + checkpoint.elapsedMillis
+                            + "ms, exploitability " + checkpoint.exploitabilityPercent + "% of pot");
+                System.out.println(report);
+
+                GameTreeExplorer viz = new GameTreeExplorer(root, rangeManager, 0);
+                viz.awaitCommand();
+            }
+        });
         t.start();
     }
 }
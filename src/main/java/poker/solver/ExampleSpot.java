@@ -0,0 +1,49 @@
+package poker.solver;
+
+import poker.tree.GameState;
+import poker.tree.GameTreeBuildSettings;
+import poker.tree.Street;
+import poker.util.CardUtility;
+import poker.util.RangeManager;
+
+/*
+ * The spot CfrPlusTrainer solves and StorageBenchmark measures: Qs Jh 2h with
+ * 910 behind a pot of 180, one bet and one raise size per street.
+ */
+public class ExampleSpot {
+
+    static final String OOP_RANGE = "AA,KK,QQ,JJ,TT,99,88,AK,AQ,AJ,KQ,KJ,KTo,QJ,QT,JT,J9,T9,98";
+    static final String IP_RANGE = "AA,KK,QQ,JJ,TT,99,88,AK,AQ,AJs,KQ,KJs,KTs,QJ,QTs,JT,J9s,T9,98";
+
+    private ExampleSpot() {
+    }
+
+    public static GameState flop() {
+        return new GameState(Street.FLOP,
+                CardUtility.boardArrToLong(CardUtility.cardFromString("Qs"),
+                        CardUtility.cardFromString("Jh"), CardUtility.cardFromString("2h")),
+                180,
+                new int[] { 910, 910 });
+    }
+
+    // the flop checked through and the 7c dealt
+    public static GameState turn() {
+        return flop().finishStreet(CardUtility.cardFromString("7c"));
+    }
+
+    public static GameTreeBuildSettings settings() {
+        GameTreeBuildSettings settings = new GameTreeBuildSettings();
+        settings.flopBetSizes = new float[] { 0.52f };
+        settings.turnBetSizes = new float[] { 0.55f };
+        settings.riverBetSizes = new float[] { 0.70f };
+
+        settings.flopRaiseSizes = new float[] { 0.45f };
+        settings.turnRaiseSizes = new float[] { 0.45f };
+        settings.riverRaiseSizes = new float[] { 0.45f };
+        return settings;
+    }
+
+    public static RangeManager rangeManager() {
+        return new RangeManager(OOP_RANGE, IP_RANGE);
+    }
+}
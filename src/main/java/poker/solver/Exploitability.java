@@ -0,0 +1,58 @@
+package poker.solver;
+
+import poker.tree.CompiledGameTree;
+import poker.tree.GameTreeNode;
+import poker.util.RangeManager;
+
+/*
+ * Exploitability of the average strategies of a trained tree. Values are
+ * chips per dealt combination pair, relative to both players having put half
+ * of the pot in, so the values of both players sum up to zero for any strategy
+ * profile and the best response values to zero at an equilibrium.
+ */
+public class Exploitability {
+
+    public static float computeBestResponseValue(GameTreeNode root, RangeManager rangeManager, int plr) {
+        float[] oppWeights = rangeManager.getInitialWeights(1 - plr);
+
+        return computeBestResponseValue(rangeManager, plr, root.computeBestResponseRecursive(plr, oppWeights),
+                root.computeRealizationProbability(plr, oppWeights));
+    }
+
+    // the same on the arrays of a compiled tree, which may have dropped its object graph
+    public static float computeBestResponseValue(CompiledGameTree tree, RangeManager rangeManager, int plr) {
+        float[] oppWeights = rangeManager.getInitialWeights(1 - plr);
+
+        return computeBestResponseValue(rangeManager, plr, tree.computeBestResponse(plr, oppWeights),
+                tree.computeRealizationProbability(plr, oppWeights));
+    }
+
+    private static float computeBestResponseValue(RangeManager rangeManager, int plr, float[] bestResponseValues,
+            float[] realizationProb) {
+        float[] plrWeights = rangeManager.getInitialWeights(plr);
+
+        double value = 0;
+        double weightSum = 0;
+        for (int h = 0; h < plrWeights.length; h++) {
+            value += plrWeights[h] * bestResponseValues[h];
+            weightSum += plrWeights[h] * realizationProb[h];
+        }
+
+        return weightSum > 0 ? (float) (value / weightSum) : 0;
+    }
+
+    // average gain of both best responses in chips
+    public static float compute(GameTreeNode root, RangeManager rangeManager) {
+        return (computeBestResponseValue(root, rangeManager, 0)
+                + computeBestResponseValue(root, rangeManager, 1)) / 2;
+    }
+
+    public static float compute(CompiledGameTree tree, RangeManager rangeManager) {
+        return (computeBestResponseValue(tree, rangeManager, 0)
+                + computeBestResponseValue(tree, rangeManager, 1)) / 2;
+    }
+
+    public static float toPercentOfPot(float exploitability, int pot) {
+        return 100 * exploitability / pot;
+    }
+}
@@ -0,0 +1,48 @@
+package poker.solver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Outcome of Solver.solve. The exploitability is the one of the last check, in
+ * chips and in % of the pot, NaN if the solve stopped before the first check.
+ */
+public class SolveReport {
+
+    public enum StopReason { TARGET_REACHED, DEADLINE, CANCELLED, MAX_ITERATIONS }
+
+    public static class Checkpoint {
+        public final int iteration;
+        public final long elapsedMillis;
+        public final float exploitability;
+        public final float exploitabilityPercent;
+
+        Checkpoint(int iteration, long elapsedMillis, float exploitability, float exploitabilityPercent) {
+            this.iteration = iteration;
+            this.elapsedMillis = elapsedMillis;
+            this.exploitability = exploitability;
+            this.exploitabilityPercent = exploitabilityPercent;
+        }
+    }
+
+    public StopReason stopReason;
+    public int iterations;
+    public long elapsedMillis;
+
+    public float exploitability = Float.NaN;
+    public float exploitabilityPercent = Float.NaN;
+
+    public List<Checkpoint> checkpoints = new ArrayList<>();
+
+    void addCheckpoint(Checkpoint checkpoint) {
+        checkpoints.add(checkpoint);
+        exploitability = checkpoint.exploitability;
+        exploitabilityPercent = checkpoint.exploitabilityPercent;
+    }
+
+    @Override
+    public String toString() {
+        return stopReason + " after " + iterations + " iterations, " + elapsedMillis + "ms, exploitability "
+                + exploitability + " (" + exploitabilityPercent + "% of pot)";
+    }
+}
@@ -0,0 +1,144 @@
+package poker.solver;
+
+import java.util.concurrent.TimeUnit;
+
+import poker.SolverConfig;
+import poker.solver.SolveReport.Checkpoint;
+import poker.solver.SolveReport.StopReason;
+import poker.tree.CompiledGameTree;
+import poker.tree.GameTreeBuilder;
+import poker.tree.GameTreeNode;
+import poker.util.RangeManager;
+
+/*
+ * Runs CFR iterations on a built tree until a deadline, a target exploitability
+ * or a cancellation, whichever comes first. Conditions are checked between
+ * iterations. An iteration is not started if the last one of the same player
+ * suggests it would miss the deadline, so solves end close to the time budget
+ * instead of up to an iteration late.
+ *
+ * The average strategies live in the tree, calling solve again continues the
+ * solve. Not thread safe, run one solve at a time off the JavaFX thread.
+ *
+ * The solver owns the builder: closing it releases the native memory of
+ * off-heap trainables, the tree must not be used afterwards.
+ */
+public class Solver implements AutoCloseable {
+
+    public static class Cancellation {
+        private volatile boolean cancelled;
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    GameTreeBuilder builder;
+    GameTreeNode root;
+    CompiledGameTree compiledTree;
+    RangeManager rangeManager;
+    int pot;
+
+    int iteration = 0;
+    int plr = 0;
+
+    // duration of the last iteration of each player, and of the last exploitability check
+    long[] iterationNanos = new long[2];
+    long checkNanos;
+
+    public Solver(GameTreeBuilder builder, RangeManager rangeManager, int pot) {
+        this.builder = builder;
+        this.root = builder.getRoot();
+        this.compiledTree = builder.getCompiledTree();
+        this.rangeManager = rangeManager;
+        this.pot = pot;
+    }
+
+    public SolveReport solve(long timeBudgetMillis, float targetExploitabilityPercent, Cancellation cancellation) {
+        SolveReport report = new SolveReport();
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis);
+
+        while (true) {
+            if (cancellation.isCancelled()) {
+                report.stopReason = StopReason.CANCELLED;
+                break;
+            }
+
+            if (iteration >= SolverConfig.MAX_ITERATIONS) {
+                report.stopReason = StopReason.MAX_ITERATIONS;
+                break;
+            }
+
+            if (System.nanoTime() + iterationNanos[plr] > deadline) {
+                report.stopReason = StopReason.DEADLINE;
+                break;
+            }
+
+            long iterationStart = System.nanoTime();
+            iteration++;
+
+            if (compiledTree != null)
+                compiledTree.computeCFValues(plr, rangeManager.getInitialWeights(1 - plr), iteration);
+            else
+                root.computeCFValuesRecursive(plr, rangeManager.getInitialWeights(1 - plr), iteration);
+
+            iterationNanos[plr] = System.nanoTime() - iterationStart;
+            plr = (iteration + 1) % 2;
+
+            // a check that would miss the deadline is skipped, the report keeps the previous one
+            if (iteration % SolverConfig.EXPLOITABILITY_INTERVAL == 0
+                    && System.nanoTime() + checkNanos <= deadline) {
+                long checkStart = System.nanoTime();
+
+                flushSkippedIterations();
+                float exploitability = compiledTree != null ? Exploitability.compute(compiledTree, rangeManager)
+                        : Exploitability.compute(root, rangeManager);
+                float exploitabilityPercent = Exploitability.toPercentOfPot(exploitability, pot);
+
+                checkNanos = System.nanoTime() - checkStart;
+                report.addCheckpoint(new Checkpoint(iteration,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), exploitability,
+                        exploitabilityPercent));
+
+                if (exploitabilityPercent <= targetExploitabilityPercent) {
+                    report.stopReason = StopReason.TARGET_REACHED;
+                    break;
+                }
+            }
+        }
+
+        flushSkippedIterations();
+
+        report.iterations = iteration;
+        report.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return report;
+    }
+
+    // the average strategies are only complete once the updates of skipped subtrees reached them
+    private void flushSkippedIterations() {
+        if (compiledTree != null)
+            compiledTree.flushSkippedIterations();
+        else
+            root.flushSkippedIterations();
+    }
+
+    // null if the compiled tree dropped the object graph, see SolverConfig.KEEP_OBJECT_TREE
+    public GameTreeNode getRoot() {
+        return root;
+    }
+
+    public int getIteration() {
+        return iteration;
+    }
+
+    @Override
+    public void close() {
+        builder.close();
+    }
+}
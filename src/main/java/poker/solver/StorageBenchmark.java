@@ -0,0 +1,107 @@
+package poker.solver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import poker.SolverConfig;
+import poker.SolverConfig.Storage;
+import poker.tree.ActionNode;
+import poker.tree.GameState;
+import poker.tree.GameTreeBuilder;
+import poker.tree.GameTreeNode;
+import poker.util.RangeManager;
+
+/*
+ * Trains the turn of the example spot with heap and quantized trainables and
+ * compares memory, speed, exploitability and the resulting average strategies.
+ * The configuration is restored afterwards.
+ *
+ * usage: StorageBenchmark [iterations]
+ */
+public class StorageBenchmark {
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        boolean compiledTree = SolverConfig.COMPILED_TREE;
+        Storage storage = SolverConfig.STORAGE;
+
+        List<float[]> heapStrategies;
+        List<float[]> quantizedStrategies;
+
+        // both runs train the object graph, only heap trainables can be compiled
+        try {
+            SolverConfig.COMPILED_TREE = false;
+            heapStrategies = run(Storage.HEAP, iterations);
+            quantizedStrategies = run(Storage.QUANTIZED, iterations);
+        } finally {
+            SolverConfig.COMPILED_TREE = compiledTree;
+            SolverConfig.STORAGE = storage;
+        }
+
+        double maxDiff = 0;
+        double diffSum = 0;
+        long numValues = 0;
+
+        for (int i = 0; i < heapStrategies.size(); i++) {
+            float[] heap = heapStrategies.get(i);
+            float[] quantized = quantizedStrategies.get(i);
+
+            for (int j = 0; j < heap.length; j++) {
+                double diff = Math.abs(heap[j] - quantized[j]);
+                maxDiff = Math.max(maxDiff, diff);
+                diffSum += diff;
+                numValues++;
+            }
+        }
+
+        System.out.println("average strategy difference: max " + maxDiff + ", mean " + diffSum / numValues);
+    }
+
+    private static List<float[]> run(Storage storage, int iterations) {
+        SolverConfig.STORAGE = storage;
+
+        GameState gameState = ExampleSpot.turn();
+        RangeManager rangeManager = ExampleSpot.rangeManager();
+
+        long usedBefore = usedMemory();
+
+        try (GameTreeBuilder builder = new GameTreeBuilder(gameState, ExampleSpot.settings(), rangeManager)) {
+            builder.build();
+            GameTreeNode root = builder.getRoot();
+
+            long treeMemory = usedMemory() - usedBefore;
+
+            long start = System.nanoTime();
+            int plr = 0;
+            for (int i = 1; i <= iterations; i++, plr = i % 2)
+                root.computeCFValuesRecursive(plr, rangeManager.getInitialWeights(1 - plr), i);
+            long time = System.nanoTime() - start;
+            root.flushSkippedIterations();
+
+            float exploitability = Exploitability.compute(root, rangeManager);
+
+            System.out.println(storage + ": tree " + treeMemory / 1000000 + " MB, "
+                    + time / 1000000 / iterations + " ms per iteration, exploitability " + exploitability + " ("
+                    + Exploitability.toPercentOfPot(exploitability, gameState.pot) + "% of pot)");
+
+            List<float[]> strategies = new ArrayList<>();
+            collectAverageStrategies(root, strategies);
+            return strategies;
+        }
+    }
+
+    private static void collectAverageStrategies(GameTreeNode node, List<float[]> strategies) {
+        if (node instanceof ActionNode)
+            strategies.add(((ActionNode) node).getAverageStrategy());
+
+        for (GameTreeNode child : node.getChildren())
+            collectAverageStrategies(child, strategies);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -2,6 +2,8 @@ package poker.training;
 
 import java.util.Arrays;
 
+import poker.SolverConfig;
+
 public class CfrPlusTrainable implements Trainable {
 
     int numActions;
@@ -12,6 +14,9 @@ public class CfrPlusTrainable implements Trainable {
     float[] cumulativeRegrets;
     float[] cumulativeRegretsSum;
 
+    float[] strategy;
+    boolean strategyStale;
+
     public CfrPlusTrainable(int numActions, int numHands) {
         this.numActions = numActions;
         this.numHands = numHands;
@@ -20,11 +25,25 @@ public class CfrPlusTrainable implements Trainable {
         this.regretsSum = new float[numHands];
         this.cumulativeRegrets = new float[numActions * numHands];
         this.cumulativeRegretsSum = new float[numHands];
+
+        this.strategy = new float[numActions * numHands];
+        Arrays.fill(this.strategy, 1F / numActions);
     }
 
     // called each iteration, therefore buffering
     public float[] getStrategy() {
-        float[] strategy = new float[numActions * numHands];
+        if (strategyStale) {
+            computeStrategy();
+            strategyStale = false;
+        }
+        return strategy;
+    }
+
+    public float[] getStrategy(float[] strategy) {
+        return getStrategy();
+    }
+
+    private void computeStrategy() {
         int idx;
 
         for (int a = 0; a < numActions; a++) {
@@ -38,7 +57,6 @@ public class CfrPlusTrainable implements Trainable {
                 }
             }
         }
-        return strategy;
     }
 
     public float[] getAverageStrategy() {
@@ -59,6 +77,12 @@ public class CfrPlusTrainable implements Trainable {
         return strategy;
     }
 
+    // the factors describe DCFR updates, the game trees only skip subtrees of DCFR trainables
+    @Override
+    public void applySkippedIterations(float[] skipped, int offset) {
+        throw new UnsupportedOperationException("skipped iterations of a CFR+ trainable");
+    }
+
     @Override
     public void updateRegrets(float[] utility, float[][] utilityActions, int itr, String path) {
 
@@ -80,5 +104,10 @@ public class CfrPlusTrainable implements Trainable {
                 this.cumulativeRegretsSum[h] += this.cumulativeRegrets[idx];
             }
         }
+
+        if (SolverConfig.LAZY_STRATEGY_NORMALIZATION)
+            strategyStale = true;
+        else
+            computeStrategy();
     }
 }
@@ -2,6 +2,8 @@ package poker.training;
 
 import java.util.Arrays;
 
+import poker.SolverConfig;
+
 public class DiscountedCfrTrainable implements Trainable {
 
     float alpha = 1.5f;
@@ -17,6 +19,9 @@ public class DiscountedCfrTrainable implements Trainable {
     float[] cumulativeRegrets;
     float[] cumulativeRegretsSum;
 
+    float[] strategy;
+    boolean strategyStale;
+
     public DiscountedCfrTrainable(int numActions, int numHands) {
         this.numActions = numActions;
         this.numHands = numHands;
@@ -25,25 +30,36 @@ public class DiscountedCfrTrainable implements Trainable {
         this.regretsSum = new float[numHands];
         this.cumulativeRegrets = new float[numActions * numHands];
         this.cumulativeRegretsSum = new float[numHands];
+
+        this.strategy = new float[numActions * numHands];
+        Arrays.fill(this.strategy, 1F / numActions);
     }
 
     // called each iteration, therefore buffering
     public float[] getStrategy() {
-        float[] strategy = new float[numActions * numHands];
-        int idx;
+        if (strategyStale) {
+            computeStrategy();
+            strategyStale = false;
+        }
+        return strategy;
+    }
+
+    public float[] getStrategy(float[] strategy) {
+        return getStrategy();
+    }
 
+    // the regret matching of updateRegrets
+    private void computeStrategy() {
         for (int a = 0; a < numActions; a++) {
             for (int h = 0; h < numHands; h++) {
-                idx = a * numHands + h;
+                int idx = a * numHands + h;
 
                 if (regretsSum[h] > 0)
                     strategy[idx] = Math.max(0, regrets[idx]) / regretsSum[h];
-                else {
+                else
                     strategy[idx] = 1F / numActions;
-                }
             }
         }
-        return strategy;
     }
 
     public float[] getAverageStrategy() {
@@ -64,9 +80,38 @@ public class DiscountedCfrTrainable implements Trainable {
         return strategy;
     }
 
+    // see DiscountedCfrTrainable2.applySkippedIterations
     @Override
-    public void updateRegrets(float[] utility, float[][] utilityActions, int itr, String path) {
+    public void applySkippedIterations(float[] skipped, int offset) {
+        float positive = skipped[offset + SkippedIterations.POSITIVE];
+        float negative = skipped[offset + SkippedIterations.NEGATIVE];
+        float decay = skipped[offset + SkippedIterations.DECAY];
+        float add = skipped[offset + SkippedIterations.ADD];
+
+        Arrays.fill(this.cumulativeRegretsSum, 0);
 
+        for (int a = 0; a < numActions; a++) {
+            for (int h = 0; h < numHands; h++) {
+                int idx = a * numHands + h;
+
+                float currentStrategy;
+                if (regretsSum[h] > 0)
+                    currentStrategy = Math.max(0, regrets[idx]) / regretsSum[h];
+                else
+                    currentStrategy = 1F / numActions;
+
+                this.regrets[idx] *= this.regrets[idx] > 0 ? positive : negative;
+                this.cumulativeRegrets[idx] = this.cumulativeRegrets[idx] * decay + currentStrategy * add;
+                this.cumulativeRegretsSum[h] += this.cumulativeRegrets[idx];
+            }
+        }
+
+        for (int h = 0; h < numHands; h++)
+            this.regretsSum[h] *= positive;
+    }
+
+    @Override
+    public void updateRegrets(float[] utility, float[][] utilityActions, int itr, String path) {
         int idx = 0;
         float regret = 0;
 
@@ -91,14 +136,29 @@ public class DiscountedCfrTrainable implements Trainable {
             }
         }
 
-        float[] currentStrategy = getStrategy();
         float strategyCoef = (float) Math.pow(((float) itr / (itr + 1)), this.gamma);
+        float currentStrategy;
+
+        // the lazy path normalises the regrets again on the next read
+        boolean cacheStrategy = !SolverConfig.LAZY_STRATEGY_NORMALIZATION;
+        strategyStale = !cacheStrategy;
 
         for (int a = 0; a < numActions; a++) {
             for (int h = 0; h < numHands; h++) {
                 idx = a * numHands + h;
+
+                // the average strategy needs the new current strategy anyway, so the
+                // cache is always refreshed here
+                if (regretsSum[h] > 0)
+                    currentStrategy = Math.max(0, regrets[idx]) / regretsSum[h];
+                else
+                    currentStrategy = 1F / numActions;
+
+                if (cacheStrategy)
+                    this.strategy[idx] = currentStrategy;
+
                 this.cumulativeRegrets[idx] *= this.theta;
-                this.cumulativeRegrets[idx] += currentStrategy[idx] * strategyCoef; // TODO multiply with reach probs
+                this.cumulativeRegrets[idx] += currentStrategy * strategyCoef; // TODO multiply with reach probs
                 this.cumulativeRegretsSum[h] += this.cumulativeRegrets[idx];
             }
         }
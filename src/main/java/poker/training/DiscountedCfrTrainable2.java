@@ -2,59 +2,165 @@ package poker.training;
 
 import java.util.Arrays;
 
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import poker.SolverConfig;
+import poker.util.FloatKernels;
+
 public class DiscountedCfrTrainable2 implements Trainable {
 
-    float alpha = 1.5f;
-    float beta = 0.5f;
-    float gamma = 2;
-    float theta = 0.9f;
+    static final float ALPHA = 1.5f;
+    static final float BETA = 0.5f;
+    static final float GAMMA = 2;
+    static final float THETA = 0.9f;
 
     int numActions;
     int numHands;
 
-    float[] regrets;
-    float[] regretsSum;
-    float[] cumulativeRegrets;
-    // float[] cumulativeRegretsSum;
+    /*
+     * regrets, regretsSum, cumulativeRegrets and the current strategy are stored
+     * back to back in data, starting at offset. This allows a trainable to be a
+     * view into a slab that is shared by all nodes of a compiled game tree. With
+     * SolverConfig.LAZY_STRATEGY_NORMALIZATION the strategy is not stored, reads
+     * normalise the regrets instead.
+     */
+    float[] data;
+    int offset;
 
     public DiscountedCfrTrainable2(int numActions, int numHands) {
+        this(new float[size(numActions, numHands)], 0, numActions, numHands);
+        initialize(data, 0, numActions, numHands);
+    }
+
+    public DiscountedCfrTrainable2(float[] data, int offset, int numActions, int numHands) {
         this.numActions = numActions;
         this.numHands = numHands;
+        this.data = data;
+        this.offset = offset;
+    }
 
-        this.regrets = new float[numActions * numHands];
-        this.regretsSum = new float[numHands];
-        this.cumulativeRegrets = new float[numActions * numHands];
-        // this.cumulativeRegretsSum = new float[numHands];
+    public static int size(int numActions, int numHands) {
+        return ((isStrategyCached() ? 3 : 2) * numActions + 1) * numHands;
     }
 
-    // called each iteration, therefore buffering
-    public float[] getStrategy() {
-        float[] strategy = new float[numActions * numHands];
-        int idx;
+    static boolean isStrategyCached() {
+        return !SolverConfig.LAZY_STRATEGY_NORMALIZATION;
+    }
+
+    // only if the strategy is cached
+    public static int strategyOffset(int offset, int numActions, int numHands) {
+        return offset + (2 * numActions + 1) * numHands;
+    }
+
+    // sets the cached strategy of a fresh trainable to the uniform strategy
+    public static void initialize(float[] data, int offset, int numActions, int numHands) {
+        if (!isStrategyCached())
+            return;
+
+        int strategy = strategyOffset(offset, numActions, numHands);
+        Arrays.fill(data, strategy, strategy + numActions * numHands, 1F / numActions);
+    }
+
+    /*
+     * The current strategy into strategy, copied from the cache or regret matched
+     * like updateRegrets does.
+     */
+    public static void getStrategy(float[] data, int offset, int numActions, int numHands, float[] strategy) {
+        if (isStrategyCached()) {
+            System.arraycopy(data, strategyOffset(offset, numActions, numHands), strategy, 0,
+                    numActions * numHands);
+            return;
+        }
+
+        int regrets = offset;
+        int regretsSum = offset + numActions * numHands;
 
         for (int a = 0; a < numActions; a++) {
             for (int h = 0; h < numHands; h++) {
-                idx = a * numHands + h;
+                int idx = a * numHands + h;
 
-                if (regretsSum[h] > 0)
-                    strategy[idx] = regrets[idx] > 0 ? regrets[idx] / regretsSum[h] : 0;
-                else {
+                if (data[regretsSum + h] > 0)
+                    strategy[idx] = data[regrets + idx] > 0 ? data[regrets + idx] / data[regretsSum + h] : 0;
+                else
                     strategy[idx] = 1F / numActions;
-                }
             }
         }
+    }
+
+    // the strategy lives in the shared data array, so it is copied out
+    public float[] getStrategy() {
+        return getStrategy(new float[numActions * numHands]);
+    }
+
+    public float[] getStrategy(float[] strategy) {
+        getStrategy(data, offset, numActions, numHands, strategy);
         return strategy;
     }
 
     public float[] getAverageStrategy() {
         float[] strategy = new float[numActions * numHands];
+        getAverageStrategy(data, offset, numActions, numHands, strategy);
+        return strategy;
+    }
+
+    @Override
+    public void updateRegrets(float[] utility, float[][] utilityActions, int itr, String path) {
+        updateRegrets(data, offset, numActions, numHands, utility, utilityActions, itr);
+    }
+
+    @Override
+    public void applySkippedIterations(float[] skipped, int skippedOffset) {
+        applySkippedIterations(data, offset, numActions, numHands, skipped, skippedOffset);
+    }
+
+    /*
+     * Applies the updates of skipped iterations. The current strategy is the same
+     * before and after, so the cached one stays valid and the regret sums are
+     * scaled along with the positive regrets.
+     */
+    public static void applySkippedIterations(float[] data, int offset, int numActions, int numHands,
+            float[] skipped, int skippedOffset) {
+        float positive = skipped[skippedOffset + SkippedIterations.POSITIVE];
+        float negative = skipped[skippedOffset + SkippedIterations.NEGATIVE];
+        float decay = skipped[skippedOffset + SkippedIterations.DECAY];
+        float add = skipped[skippedOffset + SkippedIterations.ADD];
+
+        int regrets = offset;
+        int regretsSum = offset + numActions * numHands;
+        int cumulativeRegrets = regretsSum + numHands;
+
+        for (int a = 0; a < numActions; a++) {
+            for (int h = 0; h < numHands; h++) {
+                int idx = a * numHands + h;
+                float regret = data[regrets + idx];
+
+                float currentStrategy;
+                if (data[regretsSum + h] > 0)
+                    currentStrategy = regret > 0 ? regret / data[regretsSum + h] : 0;
+                else
+                    currentStrategy = 1F / numActions;
+
+                data[regrets + idx] = regret * (regret > 0 ? positive : negative);
+                data[cumulativeRegrets + idx] = data[cumulativeRegrets + idx] * decay + currentStrategy * add;
+            }
+        }
+
+        for (int h = 0; h < numHands; h++)
+            data[regretsSum + h] *= positive;
+    }
+
+    public static void getAverageStrategy(float[] data, int offset, int numActions, int numHands,
+            float[] strategy) {
+        int cumulativeRegrets = offset + (numActions + 1) * numHands;
         int idx;
 
         float[] cumulativeRegretsSum = new float[numHands];
         for (int a = 0; a < numActions; a++) {
             for (int h = 0; h < numHands; h++) {
                 idx = a * numHands + h;
-                cumulativeRegretsSum[h] += cumulativeRegrets[idx];
+                cumulativeRegretsSum[h] += data[cumulativeRegrets + idx];
             }
         }
 
@@ -63,53 +169,143 @@ public class DiscountedCfrTrainable2 implements Trainable {
                 idx = a * numHands + h;
 
                 if (cumulativeRegretsSum[h] > 0)
-                    strategy[idx] = cumulativeRegrets[idx] / cumulativeRegretsSum[h];
+                    strategy[idx] = data[cumulativeRegrets + idx] / cumulativeRegretsSum[h];
                 else {
                     strategy[idx] = 1F / numActions;
                 }
             }
         }
-        return strategy;
     }
 
-    @Override
-    public void updateRegrets(float[] utility, float[][] utilityActions, int itr, String path) {
+    public static void updateRegrets(float[] data, int offset, int numActions, int numHands, float[] utility,
+            float[][] utilityActions, int itr) {
+
+        float alphaD = (float) Math.pow((double) itr, ALPHA);
+        alphaD = alphaD / (1 + alphaD);
+
+        float strategyCoef = (float) Math.pow(((float) itr / (itr + 1)), GAMMA);
+
+        boolean cacheStrategy = isStrategyCached();
+
+        int firstHand = 0;
+        if (FloatKernels.isVectorized())
+            firstHand = Vectorized.updateRegrets(data, offset, numActions, numHands, utility, utilityActions, alphaD,
+                    strategyCoef, cacheStrategy);
+
+        updateRegrets(data, offset, numActions, numHands, utility, utilityActions, alphaD, strategyCoef, firstHand,
+                cacheStrategy);
+    }
+
+    // updates the hands from firstHand on
+    private static void updateRegrets(float[] data, int offset, int numActions, int numHands, float[] utility,
+            float[][] utilityActions, float alphaD, float strategyCoef, int firstHand, boolean cacheStrategy) {
+
+        int regrets = offset;
+        int regretsSum = offset + numActions * numHands;
+        int cumulativeRegrets = regretsSum + numHands;
+        int strategy = cumulativeRegrets + numActions * numHands;
 
         int idx = 0;
         float regret = 0;
 
-        Arrays.fill(this.regretsSum, 0);
-        // Arrays.fill(this.cumulativeRegretsSum, 0);
-
-        float alphaD = (float) Math.pow((double) itr, this.alpha);
-        alphaD = alphaD / (1 + alphaD);
+        for (int h = firstHand; h < numHands; h++)
+            data[regretsSum + h] = 0;
 
         for (int a = 0; a < numActions; a++) {
-            for (int h = 0; h < numHands; h++) {
+            for (int h = firstHand; h < numHands; h++) {
                 idx = a * numHands + h;
                 regret = utilityActions[a][h] - utility[h];
 
-                this.regrets[idx] += regret;
+                data[regrets + idx] += regret;
 
-                if(this.regrets[idx] > 0){
-                    this.regrets[idx] *= alphaD;
-                    this.regretsSum[h] += this.regrets[idx];
-                }else {
-                    this.regrets[idx] *= this.beta;
+                if (data[regrets + idx] > 0) {
+                    data[regrets + idx] *= alphaD;
+                    data[regretsSum + h] += data[regrets + idx];
+                } else {
+                    data[regrets + idx] *= BETA;
                 }
             }
         }
 
-        float[] currentStrategy = getStrategy();
-        float strategyCoef = (float) Math.pow(((float) itr / (itr + 1)), this.gamma);
+        float currentStrategy;
 
         for (int a = 0; a < numActions; a++) {
-            for (int h = 0; h < numHands; h++) {
+            for (int h = firstHand; h < numHands; h++) {
                 idx = a * numHands + h;
-                this.cumulativeRegrets[idx] *= this.theta;
-                this.cumulativeRegrets[idx] += currentStrategy[idx] * strategyCoef; // TODO multiply with reach probs
-                // this.cumulativeRegretsSum[h] += this.cumulativeRegrets[idx];
+
+                if (data[regretsSum + h] > 0)
+                    currentStrategy = data[regrets + idx] > 0 ? data[regrets + idx] / data[regretsSum + h] : 0;
+                else
+                    currentStrategy = 1F / numActions;
+
+                if (cacheStrategy)
+                    data[strategy + idx] = currentStrategy;
+
+                data[cumulativeRegrets + idx] *= THETA;
+                data[cumulativeRegrets + idx] += currentStrategy * strategyCoef; // TODO multiply with reach probs
+            }
+        }
+    }
+
+    /*
+     * Same update on blocks of hands, all actions of a block in one pass with the
+     * regret sums kept in a register. Only loaded if the vector module is
+     * available.
+     */
+    private static class Vectorized {
+
+        static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+        // returns the first hand that is left to the scalar loop
+        static int updateRegrets(float[] data, int offset, int numActions, int numHands, float[] utility,
+                float[][] utilityActions, float alphaD, float strategyCoef, boolean cacheStrategy) {
+
+            int regrets = offset;
+            int regretsSum = offset + numActions * numHands;
+            int cumulativeRegrets = regretsSum + numHands;
+            int strategy = cumulativeRegrets + numActions * numHands;
+
+            FloatVector zero = FloatVector.zero(SPECIES);
+            FloatVector uniform = FloatVector.broadcast(SPECIES, 1F / numActions);
+            FloatVector beta = FloatVector.broadcast(SPECIES, BETA);
+
+            int h = 0;
+            for (; h < SPECIES.loopBound(numHands); h += SPECIES.length()) {
+                FloatVector handUtility = FloatVector.fromArray(SPECIES, utility, h);
+                FloatVector sum = zero;
+
+                for (int a = 0; a < numActions; a++) {
+                    int idx = a * numHands + h;
+
+                    FloatVector regret = FloatVector.fromArray(SPECIES, utilityActions[a], h).sub(handUtility);
+                    FloatVector value = FloatVector.fromArray(SPECIES, data, regrets + idx).add(regret);
+
+                    VectorMask<Float> positive = value.compare(VectorOperators.GT, 0);
+                    value = value.mul(beta.blend(alphaD, positive));
+                    sum = sum.add(value, positive);
+
+                    value.intoArray(data, regrets + idx);
+                }
+                sum.intoArray(data, regretsSum + h);
+
+                VectorMask<Float> sumPositive = sum.compare(VectorOperators.GT, 0);
+
+                for (int a = 0; a < numActions; a++) {
+                    int idx = a * numHands + h;
+
+                    FloatVector value = FloatVector.fromArray(SPECIES, data, regrets + idx);
+                    FloatVector currentStrategy = zero.blend(value.div(sum), value.compare(VectorOperators.GT, 0));
+                    currentStrategy = uniform.blend(currentStrategy, sumPositive);
+                    if (cacheStrategy)
+                        currentStrategy.intoArray(data, strategy + idx);
+
+                    FloatVector.fromArray(SPECIES, data, cumulativeRegrets + idx)
+                            .mul(THETA)
+                            .add(currentStrategy.mul(strategyCoef))
+                            .intoArray(data, cumulativeRegrets + idx);
+                }
             }
+            return h;
         }
     }
 }
@@ -0,0 +1,156 @@
+package poker.training;
+
+import static poker.training.DiscountedCfrTrainable2.ALPHA;
+import static poker.training.DiscountedCfrTrainable2.BETA;
+import static poker.training.DiscountedCfrTrainable2.GAMMA;
+import static poker.training.DiscountedCfrTrainable2.THETA;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+
+/*
+ * DiscountedCfrTrainable2 with its data in native memory, see TrainableArena.
+ * The layout within the segment is the same, offsets count floats.
+ */
+public class OffHeapDiscountedCfrTrainable implements Trainable {
+
+    int numActions;
+    int numHands;
+
+    MemorySegment segment;
+    long regrets;
+    long regretsSum;
+    long cumulativeRegrets;
+    long strategy;
+
+    OffHeapDiscountedCfrTrainable(MemorySegment segment, long offset, int numActions, int numHands) {
+        this.numActions = numActions;
+        this.numHands = numHands;
+        this.segment = segment;
+
+        this.regrets = offset;
+        this.regretsSum = offset + numActions * numHands;
+        this.cumulativeRegrets = regretsSum + numHands;
+        this.strategy = cumulativeRegrets + numActions * numHands;
+
+        for (int idx = 0; idx < numActions * numHands; idx++)
+            MemoryAccess.setFloatAtIndex(segment, strategy + idx, 1F / numActions);
+    }
+
+    // the layout of DiscountedCfrTrainable2, the strategy is always cached
+    public static int size(int numActions, int numHands) {
+        return (3 * numActions + 1) * numHands;
+    }
+
+    // the strategy lives in native memory, so it is copied out
+    public float[] getStrategy() {
+        return getStrategy(new float[numActions * numHands]);
+    }
+
+    public float[] getStrategy(float[] strategy) {
+        for (int idx = 0; idx < numActions * numHands; idx++)
+            strategy[idx] = MemoryAccess.getFloatAtIndex(segment, this.strategy + idx);
+        return strategy;
+    }
+
+    public float[] getAverageStrategy() {
+        float[] strategy = new float[numActions * numHands];
+        int idx;
+
+        float[] cumulativeRegretsSum = new float[numHands];
+        for (int a = 0; a < numActions; a++) {
+            for (int h = 0; h < numHands; h++) {
+                idx = a * numHands + h;
+                cumulativeRegretsSum[h] += MemoryAccess.getFloatAtIndex(segment, cumulativeRegrets + idx);
+            }
+        }
+
+        for (int a = 0; a < numActions; a++) {
+            for (int h = 0; h < numHands; h++) {
+                idx = a * numHands + h;
+
+                if (cumulativeRegretsSum[h] > 0)
+                    strategy[idx] = MemoryAccess.getFloatAtIndex(segment, cumulativeRegrets + idx)
+                            / cumulativeRegretsSum[h];
+                else {
+                    strategy[idx] = 1F / numActions;
+                }
+            }
+        }
+        return strategy;
+    }
+
+    // see DiscountedCfrTrainable2.applySkippedIterations, the current strategy is cached and the regret
+    // sums are only used within updateRegrets
+    @Override
+    public void applySkippedIterations(float[] skipped, int offset) {
+        float positive = skipped[offset + SkippedIterations.POSITIVE];
+        float negative = skipped[offset + SkippedIterations.NEGATIVE];
+        float decay = skipped[offset + SkippedIterations.DECAY];
+        float add = skipped[offset + SkippedIterations.ADD];
+
+        for (int idx = 0; idx < numActions * numHands; idx++) {
+            float value = MemoryAccess.getFloatAtIndex(segment, regrets + idx);
+            MemoryAccess.setFloatAtIndex(segment, regrets + idx, value * (value > 0 ? positive : negative));
+
+            value = MemoryAccess.getFloatAtIndex(segment, cumulativeRegrets + idx) * decay;
+            value += MemoryAccess.getFloatAtIndex(segment, strategy + idx) * add;
+            MemoryAccess.setFloatAtIndex(segment, cumulativeRegrets + idx, value);
+        }
+    }
+
+    @Override
+    public void updateRegrets(float[] utility, float[][] utilityActions, int itr, String path) {
+        int idx = 0;
+        float regret = 0;
+        float value;
+
+        for (int h = 0; h < numHands; h++)
+            MemoryAccess.setFloatAtIndex(segment, regretsSum + h, 0);
+
+        float alphaD = (float) Math.pow((double) itr, ALPHA);
+        alphaD = alphaD / (1 + alphaD);
+
+        for (int a = 0; a < numActions; a++) {
+            for (int h = 0; h < numHands; h++) {
+                idx = a * numHands + h;
+                regret = utilityActions[a][h] - utility[h];
+
+                value = MemoryAccess.getFloatAtIndex(segment, regrets + idx) + regret;
+
+                if (value > 0) {
+                    value *= alphaD;
+                    MemoryAccess.setFloatAtIndex(segment, regretsSum + h,
+                            MemoryAccess.getFloatAtIndex(segment, regretsSum + h) + value);
+                } else {
+                    value *= BETA;
+                }
+                MemoryAccess.setFloatAtIndex(segment, regrets + idx, value);
+            }
+        }
+
+        float strategyCoef = (float) Math.pow(((float) itr / (itr + 1)), GAMMA);
+        float currentStrategy;
+        float sum;
+
+        for (int a = 0; a < numActions; a++) {
+            for (int h = 0; h < numHands; h++) {
+                idx = a * numHands + h;
+
+                sum = MemoryAccess.getFloatAtIndex(segment, regretsSum + h);
+                value = MemoryAccess.getFloatAtIndex(segment, regrets + idx);
+
+                if (sum > 0)
+                    currentStrategy = value > 0 ? value / sum : 0;
+                else
+                    currentStrategy = 1F / numActions;
+
+                MemoryAccess.setFloatAtIndex(segment, strategy + idx, currentStrategy);
+
+                value = MemoryAccess.getFloatAtIndex(segment, cumulativeRegrets + idx) * THETA;
+                value += currentStrategy * strategyCoef; // TODO multiply with reach probs
+                MemoryAccess.setFloatAtIndex(segment, cumulativeRegrets + idx, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package poker.training;
+
+import static poker.training.DiscountedCfrTrainable2.ALPHA;
+import static poker.training.DiscountedCfrTrainable2.BETA;
+import static poker.training.DiscountedCfrTrainable2.GAMMA;
+import static poker.training.DiscountedCfrTrainable2.THETA;
+
+/*
+ * DiscountedCfrTrainable2 storing regrets and cumulative strategy as half
+ * floats. Every hand has its own scale that maps its largest absolute value to
+ * MAX_SCALED, well inside the half float range. Scaled shorts would not do:
+ * large negative regrets of one action would round the small positive regrets
+ * of the others to zero. Regret matching and averaging normalise per hand, so
+ * the scale cancels out when decoding strategies.
+ *
+ * Values are decoded, updated in float precision and encoded again with a new
+ * scale in updateRegrets. Takes less than half the memory of
+ * DiscountedCfrTrainable2, which also caches the current strategy.
+ */
+public class QuantizedDiscountedCfrTrainable implements Trainable {
+
+    static final float MAX_SCALED = 1 << 15;
+
+    int numActions;
+    int numHands;
+
+    short[] regrets;
+    short[] cumulativeRegrets;
+    float[] regretScale;
+    float[] cumulativeScale;
+
+    // regrets of one hand during updateRegrets
+    float[] handRegrets;
+
+    public QuantizedDiscountedCfrTrainable(int numActions, int numHands) {
+        this.numActions = numActions;
+        this.numHands = numHands;
+
+        this.regrets = new short[numActions * numHands];
+        this.cumulativeRegrets = new short[numActions * numHands];
+        this.regretScale = new float[numHands];
+        this.cumulativeScale = new float[numHands];
+        this.handRegrets = new float[numActions];
+    }
+
+    // called each iteration, therefore buffering
+    public float[] getStrategy() {
+        return getStrategy(new float[numActions * numHands]);
+    }
+
+    public float[] getStrategy(float[] strategy) {
+        int idx;
+
+        for (int h = 0; h < numHands; h++) {
+            float regretSum = 0;
+            for (int a = 0; a < numActions; a++) {
+                idx = a * numHands + h;
+                regretSum += Math.max(0, toFloat(regrets[idx]));
+            }
+
+            for (int a = 0; a < numActions; a++) {
+                idx = a * numHands + h;
+
+                if (regretSum > 0)
+                    strategy[idx] = Math.max(0, toFloat(regrets[idx])) / regretSum;
+                else
+                    strategy[idx] = 1F / numActions;
+            }
+        }
+        return strategy;
+    }
+
+    public float[] getAverageStrategy() {
+        float[] strategy = new float[numActions * numHands];
+        int idx;
+
+        for (int h = 0; h < numHands; h++) {
+            float cumulativeSum = 0;
+            for (int a = 0; a < numActions; a++)
+                cumulativeSum += toFloat(cumulativeRegrets[a * numHands + h]);
+
+            for (int a = 0; a < numActions; a++) {
+                idx = a * numHands + h;
+
+                if (cumulativeSum > 0)
+                    strategy[idx] = toFloat(cumulativeRegrets[idx]) / cumulativeSum;
+                else
+                    strategy[idx] = 1F / numActions;
+            }
+        }
+        return strategy;
+    }
+
+    // see DiscountedCfrTrainable2.applySkippedIterations, decoded and encoded like in updateRegrets
+    @Override
+    public void applySkippedIterations(float[] skipped, int offset) {
+        float positive = skipped[offset + SkippedIterations.POSITIVE];
+        float negative = skipped[offset + SkippedIterations.NEGATIVE];
+        float decay = skipped[offset + SkippedIterations.DECAY];
+        float add = skipped[offset + SkippedIterations.ADD];
+
+        float[] handCumulative = new float[numActions];
+        int idx;
+
+        for (int h = 0; h < numHands; h++) {
+            float regretSum = 0;
+            float maxRegret = 0;
+
+            for (int a = 0; a < numActions; a++) {
+                float value = toFloat(regrets[a * numHands + h]) * regretScale[h];
+                value *= value > 0 ? positive : negative;
+
+                handRegrets[a] = value;
+                regretSum += Math.max(0, value);
+                maxRegret = Math.max(maxRegret, Math.abs(value));
+            }
+
+            float maxCumulative = 0;
+            for (int a = 0; a < numActions; a++) {
+                idx = a * numHands + h;
+
+                float currentStrategy;
+                if (regretSum > 0)
+                    currentStrategy = handRegrets[a] > 0 ? handRegrets[a] / regretSum : 0;
+                else
+                    currentStrategy = 1F / numActions;
+
+                handCumulative[a] = toFloat(cumulativeRegrets[idx]) * cumulativeScale[h] * decay
+                        + currentStrategy * add;
+                maxCumulative = Math.max(maxCumulative, handCumulative[a]);
+            }
+
+            for (int a = 0; a < numActions; a++) {
+                idx = a * numHands + h;
+                regrets[idx] = quantize(handRegrets[a], maxRegret);
+                cumulativeRegrets[idx] = quantize(handCumulative[a], maxCumulative);
+            }
+
+            regretScale[h] = maxRegret / MAX_SCALED;
+            cumulativeScale[h] = maxCumulative / MAX_SCALED;
+        }
+    }
+
+    @Override
+    public void updateRegrets(float[] utility, float[][] utilityActions, int itr, String path) {
+        int idx = 0;
+        float regret = 0;
+
+        float alphaD = (float) Math.pow((double) itr, ALPHA);
+        alphaD = alphaD / (1 + alphaD);
+
+        float strategyCoef = (float) Math.pow(((float) itr / (itr + 1)), GAMMA);
+
+        for (int h = 0; h < numHands; h++) {
+            float regretSum = 0;
+            float maxRegret = 0;
+
+            for (int a = 0; a < numActions; a++) {
+                idx = a * numHands + h;
+                regret = utilityActions[a][h] - utility[h];
+
+                float value = toFloat(regrets[idx]) * regretScale[h] + regret;
+
+                if (value > 0) {
+                    value *= alphaD;
+                    regretSum += value;
+                } else {
+                    value *= BETA;
+                }
+
+                handRegrets[a] = value;
+                maxRegret = Math.max(maxRegret, Math.abs(value));
+            }
+
+            float maxCumulative = 0;
+            for (int a = 0; a < numActions; a++) {
+                idx = a * numHands + h;
+
+                float currentStrategy;
+                if (regretSum > 0)
+                    currentStrategy = handRegrets[a] > 0 ? handRegrets[a] / regretSum : 0;
+                else
+                    currentStrategy = 1F / numActions;
+
+                // the cumulative strategy is decoded and kept in the regret buffer's place
+                float cumulative = toFloat(cumulativeRegrets[idx]) * cumulativeScale[h] * THETA;
+                cumulative += currentStrategy * strategyCoef; // TODO multiply with reach probs
+
+                regrets[idx] = quantize(handRegrets[a], maxRegret);
+                handRegrets[a] = cumulative;
+                maxCumulative = Math.max(maxCumulative, cumulative);
+            }
+
+            for (int a = 0; a < numActions; a++)
+                cumulativeRegrets[a * numHands + h] = quantize(handRegrets[a], maxCumulative);
+
+            regretScale[h] = maxRegret / MAX_SCALED;
+            cumulativeScale[h] = maxCumulative / MAX_SCALED;
+        }
+    }
+
+    private static short quantize(float value, float maxAbs) {
+        if (maxAbs == 0)
+            return 0;
+        return toHalf(value / maxAbs * MAX_SCALED);
+    }
+
+    // IEEE 754 binary16, rounding half up. Values beyond the half range are clamped
+    static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        float abs = Math.abs(value);
+
+        if (abs >= 65504f)
+            return (short) (sign | 0x7bff);
+
+        // subnormal, rounds up to the smallest normal number correctly
+        if (abs < 0x1p-14f)
+            return (short) (sign | Math.round(abs * 0x1p24f));
+
+        int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+        int mantissa = bits & 0x7fffff;
+
+        // a carry of the rounding moves into the exponent
+        int half = (exponent << 10 | mantissa >>> 13) + ((mantissa >>> 12) & 1);
+        return (short) (sign | half);
+    }
+
+    static float toFloat(short half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1f;
+        int mantissa = half & 0x3ff;
+
+        if (exponent == 0) {
+            float value = mantissa * 0x1p-24f;
+            return sign != 0 ? -value : value;
+        }
+        return Float.intBitsToFloat(sign | (exponent - 15 + 127) << 23 | mantissa << 13);
+    }
+}
@@ -0,0 +1,76 @@
+package poker.training;
+
+import static poker.training.DiscountedCfrTrainable2.ALPHA;
+import static poker.training.DiscountedCfrTrainable2.BETA;
+import static poker.training.DiscountedCfrTrainable2.GAMMA;
+import static poker.training.DiscountedCfrTrainable2.THETA;
+
+/*
+ * DCFR updates of the iterations a node was skipped in, because no opponent
+ * hand reached it. All values of such an iteration are zero, so positive
+ * regrets are multiplied by alphaD and negative ones by BETA, and the
+ * cumulative strategy decays by THETA and adds the current strategy. Scaling
+ * the positive regrets does not change the current strategy, so the updates of
+ * any number of skipped iterations compose to four factors:
+ *
+ *   regret > 0:  regret * positive
+ *   regret <= 0: regret * negative
+ *   cumulative:  cumulative * decay + currentStrategy * add
+ *
+ * The game trees keep the factors in blocks of SIZE floats per node and
+ * player, see GameTreeNode.skipIteration, and hand them to the trainables. A
+ * block of zeros has nothing pending, add is positive once an iteration was
+ * skipped.
+ */
+public final class SkippedIterations {
+
+    public static final int SIZE = 4;
+
+    static final int POSITIVE = 0;
+    static final int NEGATIVE = 1;
+    static final int DECAY = 2;
+    static final int ADD = 3;
+
+    private SkippedIterations() {
+    }
+
+    public static boolean isPending(float[] block, int offset) {
+        return block[offset + ADD] != 0;
+    }
+
+    // the same coefficients as the update of iteration itr
+    public static void add(float[] block, int offset, int itr) {
+        if (!isPending(block, offset)) {
+            block[offset + POSITIVE] = 1;
+            block[offset + NEGATIVE] = 1;
+            block[offset + DECAY] = 1;
+        }
+
+        float alphaD = (float) Math.pow((double) itr, ALPHA);
+        alphaD = alphaD / (1 + alphaD);
+
+        float strategyCoef = (float) Math.pow(((float) itr / (itr + 1)), GAMMA);
+
+        block[offset + POSITIVE] *= alphaD;
+        block[offset + NEGATIVE] *= BETA;
+        block[offset + DECAY] *= THETA;
+        block[offset + ADD] = block[offset + ADD] * THETA + strategyCoef;
+    }
+
+    // appends the iterations of a pending block that were all skipped after those of block
+    public static void append(float[] block, int offset, float[] later, int laterOffset) {
+        if (!isPending(block, offset)) {
+            System.arraycopy(later, laterOffset, block, offset, SIZE);
+            return;
+        }
+
+        block[offset + POSITIVE] *= later[laterOffset + POSITIVE];
+        block[offset + NEGATIVE] *= later[laterOffset + NEGATIVE];
+        block[offset + DECAY] *= later[laterOffset + DECAY];
+        block[offset + ADD] = block[offset + ADD] * later[laterOffset + DECAY] + later[laterOffset + ADD];
+    }
+
+    public static void clear(float[] block, int offset) {
+        block[offset + ADD] = 0;
+    }
+}
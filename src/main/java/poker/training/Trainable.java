@@ -2,9 +2,18 @@ package poker.training;
 
 public interface Trainable {
     
+    // current strategy, cached by the trainable and refreshed by updateRegrets. Must not be modified
     public float[] getStrategy();
 
+    // returns the cached strategy, or copies it into the given buffer (which may be longer than needed)
+    // if the trainable does not keep it in an array of its own
+    public float[] getStrategy(float[] strategy);
+
     public float[] getAverageStrategy();
 
     public void updateRegrets(float[] utility,float[][] utilityActions, int itr, String path);
+
+    // applies the updates of iterations in which no opponent hand reached the node, so all its values
+    // were zero. The block of factors at offset is described in SkippedIterations
+    public void applySkippedIterations(float[] skipped, int offset);
 }
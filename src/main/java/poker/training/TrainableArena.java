@@ -0,0 +1,55 @@
+package poker.training;
+
+import java.lang.ref.Cleaner;
+
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+/*
+ * Native memory for the trainables of a game tree. The arena is sized once for
+ * the whole tree and trainables are handed out back to back, so offsets are
+ * longs and a tree may hold more than 2^31 floats. Closing the arena frees the
+ * memory immediately, trainables must not be used afterwards. An arena that
+ * becomes unreachable without being closed is freed by the cleaner.
+ *
+ * The scope is shared because the traversal may run on several threads.
+ */
+public class TrainableArena implements AutoCloseable {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    ResourceScope scope;
+    MemorySegment segment;
+
+    long numFloats;
+    long nextOffset; // in floats
+
+    public TrainableArena(long numFloats) {
+        this.numFloats = numFloats;
+        this.scope = ResourceScope.newSharedScope(CLEANER);
+        this.segment = MemorySegment.allocateNative(numFloats * Float.BYTES, Float.BYTES, scope);
+        this.segment.fill((byte) 0);
+    }
+
+    public Trainable allocate(int numActions, int numHands) {
+        int size = OffHeapDiscountedCfrTrainable.size(numActions, numHands);
+
+        if (nextOffset + size > numFloats)
+            throw new IllegalStateException("trainable arena exhausted (" + numFloats + " floats)");
+
+        OffHeapDiscountedCfrTrainable trainable = new OffHeapDiscountedCfrTrainable(segment, nextOffset,
+                numActions, numHands);
+        nextOffset += size;
+        return trainable;
+    }
+
+    public long byteSize() {
+        return numFloats * Float.BYTES;
+    }
+
+    @Override
+    public void close() {
+        if (scope.isAlive())
+            scope.close();
+    }
+}
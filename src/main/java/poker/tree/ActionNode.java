@@ -1,7 +1,11 @@
 package poker.tree;
 
+import java.util.Arrays;
+
 import poker.SolverConfig;
 import poker.training.Trainable;
+import poker.util.FloatKernels;
+import poker.util.HandSymmetry;
 import poker.util.RangeManager;
 
 public class ActionNode extends GameTreeNode {
@@ -9,6 +13,9 @@ public class ActionNode extends GameTreeNode {
     Trainable trainable;
     int nodePlr;
 
+    // null if the trainable stores all hands of the node player
+    HandSymmetry symmetry;
+
     public static int actionNodeCnt = 0;
 
     public ActionNode(GameTreeNode parent, int nodePlr, Trainable trainable) {
@@ -27,16 +34,23 @@ public class ActionNode extends GameTreeNode {
     }
 
     @Override
-    public float[] computeCFValuesRecursive(int plr, float[] oppReachProbs, int itr) {
+    void computeCFValues(int plr, float[] oppReachProbs, int itr, ScratchArena arena, int depth, float[] result) {
         int numActions = children.size();
 
         int plrNumHands = rangeManager.getNumHands(plr);
         int oppNumHands = rangeManager.getNumHands(1 - plr);
+        int nodePlrNumHands = rangeManager.getNumHands(nodePlr);
+
+        ScratchArena.Frame frame = arena.frame(depth);
+
+        pushSkippedIterations(plr);
 
         // calculate counter factual values
-        float[] newPlrCfV = new float[plrNumHands];
-        float[][] plrCfvaluesActions = new float[numActions][];
-        float[] strategy = trainable.getStrategy();
+        float[] newPlrCfV = result;
+        float[][] plrCfvaluesActions = frame.childCFValues(numActions, plrNumHands);
+        float[] strategy = getStrategy(frame);
+
+        Arrays.fill(newPlrCfV, 0, plrNumHands, 0);
 
         for (int a = 0; a < numActions; a++) {
 
@@ -44,46 +58,135 @@ public class ActionNode extends GameTreeNode {
 
             // node player is opponent
             if (nodePlr != plr) {
-                newOppHandWeight = new float[oppNumHands];
-
-                for (int h = 0; h < oppNumHands; h++) {
-                    newOppHandWeight[h] = oppReachProbs[h] * strategy[a * oppNumHands + h];
+                newOppHandWeight = frame.oppReachProbs(oppNumHands);
+                FloatKernels.multiply(oppReachProbs, strategy, a * oppNumHands, newOppHandWeight, oppNumHands);
+
+                // no live opponent hand reaches the child, all its values are zero
+                if (SolverConfig.SKIP_UNREACHED_SUBTREES
+                        && FloatKernels.isZero(newOppHandWeight, boardHands().hands[1 - plr])) {
+                    children.get(a).skipIteration(plr, itr);
+                    continue;
                 }
             }
 
-            plrCfvaluesActions[a] = children.get(a).computeCFValuesRecursive(plr, newOppHandWeight, itr);
+            children.get(a).computeCFValues(plr, newOppHandWeight, itr, arena, depth + 1, plrCfvaluesActions[a]);
 
-            if (nodePlr == plr) {
-                for (int h = 0; h < plrNumHands; h++) {
-                    newPlrCfV[h] += strategy[a * plrNumHands + h] * plrCfvaluesActions[a][h];
-                }
-            } else {
-                for (int h = 0; h < plrNumHands; h++) {
-                    newPlrCfV[h] += plrCfvaluesActions[a][h];
-                }
-            }
+            if (nodePlr == plr)
+                FloatKernels.accumulateProduct(newPlrCfV, strategy, a * plrNumHands, plrCfvaluesActions[a],
+                        plrNumHands);
+            else
+                FloatKernels.accumulate(newPlrCfV, plrCfvaluesActions[a], plrNumHands);
 
         }
 
         // update regrets
+        if (nodePlr == plr) {
+            if (symmetry != null) {
+                float[][] compressed = compressCFValues(symmetry, newPlrCfV, plrCfvaluesActions, numActions, frame);
+                trainable.updateRegrets(compressed[numActions], compressed, itr, path);
+            } else {
+                trainable.updateRegrets(newPlrCfV, plrCfvaluesActions, itr, path);
+            }
+        }
+
+        if (SolverConfig.STORE_EV)
+            storeExpectedValue(plr, oppReachProbs, newPlrCfV, frame);
+    }
+
+    @Override
+    void applySkippedIterations(int plr, float[] skipped, int offset) {
         if (nodePlr == plr)
-            trainable.updateRegrets(newPlrCfV, plrCfvaluesActions, itr, path);
+            trainable.applySkippedIterations(skipped, offset);
+    }
+
+    private float[] getStrategy(ScratchArena.Frame frame) {
+        int numActions = children.size();
+        int nodePlrNumHands = rangeManager.getNumHands(nodePlr);
 
-        if (SolverConfig.STORE_EV) {
-            float[] realizationProb = computeRealizationProbability(plr, oppReachProbs);
-            this.expectedValue = new float[newPlrCfV.length];
+        if (symmetry == null)
+            return trainable.getStrategy(frame.strategy(numActions * nodePlrNumHands));
 
-            for (int i = 0; i < this.expectedValue.length; i++)
-                this.expectedValue[i] = newPlrCfV[i] / realizationProb[i];
+        float[] compressed = trainable.getStrategy(frame.compressedStrategy(numActions * symmetry.numCanonical));
+        float[] strategy = frame.strategy(numActions * nodePlrNumHands);
+        symmetry.expand(compressed, 0, numActions, strategy);
+        return strategy;
+    }
+
+    /*
+     * Values of the representatives of the canonical hands, rows of the actions
+     * followed by the node's values.
+     */
+    static float[][] compressCFValues(HandSymmetry symmetry, float[] utility, float[][] utilityActions,
+            int numActions, ScratchArena.Frame frame) {
+        float[][] compressed = frame.compressedCFValues(numActions + 1, symmetry.numCanonical);
+
+        for (int a = 0; a < numActions; a++)
+            symmetry.compress(utilityActions[a], compressed[a]);
+        symmetry.compress(utility, compressed[numActions]);
+        return compressed;
+    }
+
+    @Override
+    void computeBestResponse(int plr, float[] oppReachProbs, ScratchArena arena, int depth, float[] result) {
+        int numActions = children.size();
+
+        int plrNumHands = rangeManager.getNumHands(plr);
+        int oppNumHands = rangeManager.getNumHands(1 - plr);
+
+        ScratchArena.Frame frame = arena.frame(depth);
+        float[][] plrValuesActions = frame.childCFValues(numActions, plrNumHands);
+
+        // the best responding player picks the best action for every hand
+        if (nodePlr == plr) {
+            for (int a = 0; a < numActions; a++)
+                children.get(a).computeBestResponse(plr, oppReachProbs, arena, depth + 1, plrValuesActions[a]);
+
+            for (int h = 0; h < plrNumHands; h++) {
+                result[h] = plrValuesActions[0][h];
+                for (int a = 1; a < numActions; a++)
+                    result[h] = Math.max(result[h], plrValuesActions[a][h]);
+            }
+            return;
         }
 
-        return newPlrCfV;
+        float[] strategy = getAverageStrategy();
+        float[] newOppHandWeight = frame.oppReachProbs(oppNumHands);
+
+        Arrays.fill(result, 0, plrNumHands, 0);
+
+        for (int a = 0; a < numActions; a++) {
+            FloatKernels.multiply(oppReachProbs, strategy, a * oppNumHands, newOppHandWeight, oppNumHands);
+            if (FloatKernels.isZero(newOppHandWeight, boardHands().hands[1 - plr]))
+                continue;
+
+            children.get(a).computeBestResponse(plr, newOppHandWeight, arena, depth + 1, plrValuesActions[a]);
+            FloatKernels.accumulate(result, plrValuesActions[a], plrNumHands);
+        }
     }
 
     public Trainable getTrainable() {
         return trainable;
     }
 
+    // average strategy of all hands of the node player, expanded from the canonical hands
+    public float[] getAverageStrategy() {
+        return expandStrategy(trainable.getAverageStrategy());
+    }
+
+    private float[] expandStrategy(float[] strategy) {
+        if (symmetry == null)
+            return strategy;
+
+        float[] expanded = new float[children.size() * symmetry.numHands];
+        symmetry.expand(strategy, 0, children.size(), expanded);
+        return expanded;
+    }
+
+    // hands per action of the trainable
+    int getNumTrainableHands() {
+        return symmetry != null ? symmetry.numCanonical : rangeManager.getNumHands(nodePlr);
+    }
+
     public int getNodePlayer() {
         return nodePlr;
     }
@@ -104,7 +207,7 @@ public class ActionNode extends GameTreeNode {
         // calculate counter factual values
         float[] newPlrEquity = new float[plrNumHands];
         float[][] plrEquityActions = new float[numActions][];
-        float[] strategy = trainable.getStrategy();
+        float[] strategy = expandStrategy(trainable.getStrategy());
 
         for (int a = 0; a < numActions; a++) {
             if (children.get(a) instanceof TerminalNode) {
@@ -134,6 +237,12 @@ public class ActionNode extends GameTreeNode {
                 for (int h = 0; h < oppNumHands; h++) {
                     newOppHandWeight[h] = oppReachProbs[h] * strategy[a * oppNumHands + h];
                 }
+
+                // the equities of the skipped subtree keep their last values
+                if (FloatKernels.isZero(newOppHandWeight, boardHands().hands[1 - plr])) {
+                    plrEquityActions[a] = new float[plrNumHands];
+                    continue;
+                }
             }
 
             plrEquityActions[a] = children.get(a).computeEquityRecursive(plr, newOppHandWeight);
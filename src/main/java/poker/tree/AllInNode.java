@@ -0,0 +1,221 @@
+package poker.tree;
+
+import java.util.Arrays;
+
+import poker.SolverConfig;
+import poker.util.BoardHands;
+import poker.util.FloatKernels;
+import poker.util.IsomorphismUtility.IsomorphismData;
+import poker.util.RangeManager;
+import poker.util.RunoutEquity;
+
+/*
+ * Leaf of a player being all-in before the river. Instead of a subtree of
+ * chance nodes without decisions, it sums the showdown values of the runouts
+ * directly. Runouts are dealt, weighted and mirrored by suit isomorphism like
+ * the chance nodes would, so the values are the same.
+ *
+ * Where a showdown per runout costs more than a pass over all pairs of hands,
+ * the node reads the results of the pairs over all runouts from the board's
+ * RunoutEquity instead. It enumerates every runout, so it does not rely on the
+ * opponent reach being suit symmetric like the mirrored deals do.
+ */
+public class AllInNode extends GameTreeNode {
+
+    // a showdown per hand costs many times the vectorized step of a pair, measured above 40 on turn boards
+    private static final int RUNOUT_EQUITY_FACTOR = 16;
+
+    // the deals of one street, like the children of a chance node. Shared by the all-in nodes of a board
+    static class Runouts {
+        byte[] cards;
+        long[] boards;
+        IsomorphismData isomorphismData;
+
+        // runouts of the following street per deal, null on the river
+        Runouts[] next;
+
+        int numPossibleDeals() {
+            int numIsomorphicDeals = SolverConfig.SUIT_ISOMORPHISM ? isomorphismData.cards.length : 0;
+
+            // minus 4 to account for hole cards of both players
+            return cards.length + numIsomorphicDeals - 4;
+        }
+
+        // river boards, without the ones mirrored by suit isomorphism
+        int numShowdowns() {
+            if (next == null)
+                return cards.length;
+
+            int numShowdowns = 0;
+            for (Runouts runouts : next)
+                numShowdowns += runouts.numShowdowns();
+            return numShowdowns;
+        }
+
+        // nodes of the replaced chance subtree
+        int size() {
+            int size = 1;
+            for (int i = 0; i < cards.length; i++)
+                size += next == null ? 1 : next[i].size();
+            return size;
+        }
+    }
+
+    int pot;
+    Runouts runouts;
+    RunoutEquity runoutEquity; // null if the runouts are summed
+
+    public AllInNode(GameTreeNode parent, int pot, Runouts runouts) {
+        super(parent);
+        this.pot = pot;
+        this.runouts = runouts;
+    }
+
+    // counts the runouts, so the parallel cutoff sees the work of the replaced subtree
+    @Override
+    int computeSubtreeSize() {
+        subtreeSize = runoutEquity != null ? 1 : runouts.size();
+        return subtreeSize;
+    }
+
+    /*
+     * A showdown costs a pass over the hands of both players, the runout
+     * equity a pass over the pairs of hands. Its memory grows with the pairs
+     * too and is limited by RangeManager.getRunoutEquity.
+     */
+    static boolean usesRunoutEquity(Runouts runouts, BoardHands boardHands) {
+        long numOopHands = boardHands.hands[0].length;
+        long numIpHands = boardHands.hands[1].length;
+        return numOopHands * numIpHands <= RUNOUT_EQUITY_FACTOR * runouts.numShowdowns() * (numOopHands + numIpHands);
+    }
+
+    @Override
+    void computeCFValues(int plr, float[] oppReachProbs, int itr, ScratchArena arena, int depth, float[] result) {
+        computeAllInValues(rangeManager, runouts, runoutEquity, pot, plr, oppReachProbs, arena, depth, result,
+                ParallelTraversal.isEnabled(this));
+
+        if (SolverConfig.STORE_EV)
+            storeExpectedValue(plr, oppReachProbs, result, arena.frame(depth));
+    }
+
+    // without decisions the best response values are the counterfactual values
+    @Override
+    void computeBestResponse(int plr, float[] oppReachProbs, ScratchArena arena, int depth, float[] result) {
+        computeAllInValues(rangeManager, runouts, runoutEquity, pot, plr, oppReachProbs, arena, depth, result,
+                ParallelTraversal.isEnabled(this));
+    }
+
+    // the runouts are only read without a runout equity, parallel forks the deals of the first street
+    static void computeAllInValues(RangeManager rangeManager, Runouts runouts, RunoutEquity runoutEquity, int pot,
+            int plr, float[] oppReachProbs, ScratchArena arena, int depth, float[] result, boolean parallel) {
+        if (runoutEquity != null)
+            runoutEquity.computeCFValues(plr, oppReachProbs, 0.5F * pot, result);
+        else
+            computeRunoutValues(rangeManager, runouts, pot, plr, oppReachProbs, arena, depth, result, parallel);
+    }
+
+    private static void computeRunoutValues(RangeManager rangeManager, Runouts runouts, int pot, int plr,
+            float[] oppReachProbs, ScratchArena arena, int depth, float[] result, boolean parallel) {
+        int numDeals = runouts.cards.length;
+
+        int plrNumHands = rangeManager.getNumHands(plr);
+        int oppNumHands = rangeManager.getNumHands(1 - plr);
+
+        ScratchArena.Frame frame = arena.frame(depth);
+
+        float[] newOppReachProbs = frame.oppReachProbs(oppNumHands);
+        float[][] plrValuesDeals = frame.childCFValues(numDeals, plrNumHands);
+
+        int numPossibleDeals = runouts.numPossibleDeals();
+        for (int hand = 0; hand < oppNumHands; hand++)
+            newOppReachProbs[hand] = oppReachProbs[hand] / numPossibleDeals;
+
+        // only the deals of the first street are forked
+        if (parallel) {
+            ParallelTraversal.traverseChildren(numDeals, (deal, dealArena) -> computeDealValues(rangeManager,
+                    runouts, deal, pot, plr, newOppReachProbs, dealArena, 0, plrValuesDeals[deal]));
+        } else {
+            for (int deal = 0; deal < numDeals; deal++)
+                computeDealValues(rangeManager, runouts, deal, pot, plr, newOppReachProbs, arena, depth + 1,
+                        plrValuesDeals[deal]);
+        }
+
+        Arrays.fill(result, 0, plrNumHands, 0);
+
+        for (int deal = 0; deal < numDeals; deal++)
+            FloatKernels.accumulate(result, plrValuesDeals[deal], plrNumHands);
+
+        if (SolverConfig.SUIT_ISOMORPHISM) {
+            IsomorphismData isomorphismData = runouts.isomorphismData;
+            for (int i = 0; i < isomorphismData.references.length; i++) {
+                byte suit = (byte) (isomorphismData.cards[i] & 3);
+                int ref = isomorphismData.references[i];
+
+                FloatKernels.accumulatePermuted(result, plrValuesDeals[ref],
+                        isomorphismData.permutations[suit][plr], plrNumHands);
+            }
+        }
+    }
+
+    private static void computeDealValues(RangeManager rangeManager, Runouts runouts, int deal, int pot, int plr,
+            float[] oppReachProbs, ScratchArena arena, int depth, float[] result) {
+        if (runouts.next == null)
+            ShowdownNode.computeShowdownCFValues(rangeManager, runouts.boards[deal], pot, plr, oppReachProbs,
+                    arena.frame(depth), result);
+        else
+            computeRunoutValues(rangeManager, runouts.next[deal], pot, plr, oppReachProbs, arena, depth, result,
+                    false);
+    }
+
+    @Override
+    public float[] computeEquityRecursive(int plr, float[] oppReachProbs) {
+        float[] plrEquity = computeRunoutEquity(runouts, plr, oppReachProbs);
+
+        float[] realizationProb = computeRealizationProbability(plr, oppReachProbs);
+        this.equity = new float[plrEquity.length];
+        for (int i = 0; i < equity.length; i++)
+            this.equity[i] = plrEquity[i] / realizationProb[i];
+
+        return plrEquity;
+    }
+
+    private float[] computeRunoutEquity(Runouts runouts, int plr, float[] oppReachProbs) {
+        int plrNumHands = rangeManager.getNumHands(plr);
+        int oppNumHands = rangeManager.getNumHands(1 - plr);
+        int numDeals = runouts.cards.length;
+
+        float[] newPlrEquity = new float[plrNumHands];
+        float[] newOppReachProbs = new float[oppNumHands];
+
+        int numPossibleDeals = runouts.numPossibleDeals();
+        for (int hand = 0; hand < oppNumHands; hand++)
+            newOppReachProbs[hand] = oppReachProbs[hand] / numPossibleDeals;
+
+        float[][] plrEquityDeals = new float[numDeals][];
+        for (int deal = 0; deal < numDeals; deal++) {
+            if (runouts.next == null) {
+                plrEquityDeals[deal] = new float[plrNumHands];
+                ShowdownNode.computeShowdownEquity(rangeManager, runouts.boards[deal], plr, newOppReachProbs,
+                        plrEquityDeals[deal]);
+            } else {
+                plrEquityDeals[deal] = computeRunoutEquity(runouts.next[deal], plr, newOppReachProbs);
+            }
+        }
+
+        for (int deal = 0; deal < numDeals; deal++)
+            FloatKernels.accumulate(newPlrEquity, plrEquityDeals[deal], plrNumHands);
+
+        if (SolverConfig.SUIT_ISOMORPHISM) {
+            IsomorphismData isomorphismData = runouts.isomorphismData;
+            for (int i = 0; i < isomorphismData.references.length; i++) {
+                byte suit = (byte) (isomorphismData.cards[i] & 3);
+                int ref = isomorphismData.references[i];
+
+                FloatKernels.accumulatePermuted(newPlrEquity, plrEquityDeals[ref],
+                        isomorphismData.permutations[suit][plr], plrNumHands);
+            }
+        }
+
+        return newPlrEquity;
+    }
+}
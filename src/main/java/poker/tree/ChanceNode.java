@@ -1,7 +1,9 @@
 package poker.tree;
 
+import java.util.Arrays;
+
 import poker.SolverConfig;
-import poker.util.IsomorphismUtility;
+import poker.util.FloatKernels;
 import poker.util.IsomorphismUtility.IsomorphismData;
 
 public class ChanceNode extends GameTreeNode {
@@ -17,57 +19,108 @@ public class ChanceNode extends GameTreeNode {
     }
 
     @Override
-    public float[] computeCFValuesRecursive(int plr, float[] oppReachProbs, int itr) {
+    void computeCFValues(int plr, float[] oppReachProbs, int itr, ScratchArena arena, int depth, float[] result) {
+        int numDeals = children.size();
 
         int plrNumHands = rangeManager.getNumHands(plr);
         int oppNumHands = rangeManager.getNumHands(1 - plr);
 
-        float[] newPlrCFV = new float[plrNumHands];
-        float[] newOppReachProbs = new float[oppNumHands];
+        ScratchArena.Frame frame = arena.frame(depth);
 
-        float[][] plrCFVChildren = new float[children.size()][];
-        for (int child = 0; child < children.size(); child++) {
+        pushSkippedIterations(plr);
 
-            int numIsomorphicDeals = 0;
-            if (SolverConfig.SUIT_ISOMORPHISM) {
-                numIsomorphicDeals = isomorphismData.cards.length;
-            }
+        float[] newPlrCFV = result;
+        float[] newOppReachProbs = frame.oppReachProbs(oppNumHands);
+        float[][] plrCFVChildren = frame.childCFValues(numDeals, plrNumHands);
 
-            // minus 4 to account for hole cards of both players
-            int numPossibleDeals = children.size() + numIsomorphicDeals - 4;
+        int numIsomorphicDeals = 0;
+        if (SolverConfig.SUIT_ISOMORPHISM) {
+            numIsomorphicDeals = isomorphismData.cards.length;
+        }
 
-            for (int hand = 0; hand < oppNumHands; hand++)
-                newOppReachProbs[hand] = oppReachProbs[hand] / numPossibleDeals;
+        // minus 4 to account for hole cards of both players
+        int numPossibleDeals = numDeals + numIsomorphicDeals - 4;
 
-            plrCFVChildren[child] = children.get(child).computeCFValuesRecursive(plr, newOppReachProbs, itr);
+        for (int hand = 0; hand < oppNumHands; hand++)
+            newOppReachProbs[hand] = oppReachProbs[hand] / numPossibleDeals;
 
-            for (int h = 0; h < plrCFVChildren[child].length; h++)
-                newPlrCFV[h] += plrCFVChildren[child][h];
+        // forked children get an arena of their own and start at its first frame
+        if (ParallelTraversal.isEnabled(this)) {
+            ParallelTraversal.traverseChildren(numDeals, (child, childArena) -> children.get(child)
+                    .computeCFValues(plr, newOppReachProbs, itr, childArena, 0, plrCFVChildren[child]));
+        } else {
+            for (int child = 0; child < numDeals; child++)
+                children.get(child).computeCFValues(plr, newOppReachProbs, itr, arena, depth + 1,
+                        plrCFVChildren[child]);
         }
 
-        // TODO
+        Arrays.fill(newPlrCFV, 0, plrNumHands, 0);
+
+        for (int child = 0; child < numDeals; child++)
+            FloatKernels.accumulate(newPlrCFV, plrCFVChildren[child], plrNumHands);
+
+        // isomorphic deals are added after all children returned, in the same order
+        // for sequential and parallel traversals
         if (SolverConfig.SUIT_ISOMORPHISM) {
             for (int i = 0; i < isomorphismData.references.length; i++) {
                 byte suit = (byte) (isomorphismData.cards[i] & 3);
                 int ref = isomorphismData.references[i];
 
-                IsomorphismUtility.applySwap(plrCFVChildren[ref], isomorphismData.swaps[suit][plr]);
-                for (int h = 0; h < plrCFVChildren[ref].length; h++) {
-                    newPlrCFV[h] += plrCFVChildren[ref][h];
-                }
-                IsomorphismUtility.applySwap(plrCFVChildren[ref], isomorphismData.swaps[suit][plr]);
+                FloatKernels.accumulatePermuted(newPlrCFV, plrCFVChildren[ref],
+                        isomorphismData.permutations[suit][plr], plrNumHands);
             }
         }
 
-        if (SolverConfig.STORE_EV) {
-            float[] realizationProb = computeRealizationProbability(plr, oppReachProbs);
-            this.expectedValue = new float[newPlrCFV.length];
+        if (SolverConfig.STORE_EV)
+            storeExpectedValue(plr, oppReachProbs, newPlrCFV, frame);
+    }
 
-            for (int i = 0; i < this.expectedValue.length; i++)
-                this.expectedValue[i] = newPlrCFV[i] / realizationProb[i];
+    @Override
+    void computeBestResponse(int plr, float[] oppReachProbs, ScratchArena arena, int depth, float[] result) {
+        int numDeals = children.size();
+
+        int plrNumHands = rangeManager.getNumHands(plr);
+        int oppNumHands = rangeManager.getNumHands(1 - plr);
+
+        ScratchArena.Frame frame = arena.frame(depth);
+
+        float[] newOppReachProbs = frame.oppReachProbs(oppNumHands);
+        float[][] plrValuesChildren = frame.childCFValues(numDeals, plrNumHands);
+
+        int numIsomorphicDeals = 0;
+        if (SolverConfig.SUIT_ISOMORPHISM) {
+            numIsomorphicDeals = isomorphismData.cards.length;
         }
 
-        return newPlrCFV;
+        // minus 4 to account for hole cards of both players
+        int numPossibleDeals = numDeals + numIsomorphicDeals - 4;
+
+        for (int hand = 0; hand < oppNumHands; hand++)
+            newOppReachProbs[hand] = oppReachProbs[hand] / numPossibleDeals;
+
+        if (ParallelTraversal.isEnabled(this)) {
+            ParallelTraversal.traverseChildren(numDeals, (child, childArena) -> children.get(child)
+                    .computeBestResponse(plr, newOppReachProbs, childArena, 0, plrValuesChildren[child]));
+        } else {
+            for (int child = 0; child < numDeals; child++)
+                children.get(child).computeBestResponse(plr, newOppReachProbs, arena, depth + 1,
+                        plrValuesChildren[child]);
+        }
+
+        Arrays.fill(result, 0, plrNumHands, 0);
+
+        for (int child = 0; child < numDeals; child++)
+            FloatKernels.accumulate(result, plrValuesChildren[child], plrNumHands);
+
+        if (SolverConfig.SUIT_ISOMORPHISM) {
+            for (int i = 0; i < isomorphismData.references.length; i++) {
+                byte suit = (byte) (isomorphismData.cards[i] & 3);
+                int ref = isomorphismData.references[i];
+
+                FloatKernels.accumulatePermuted(result, plrValuesChildren[ref],
+                        isomorphismData.permutations[suit][plr], plrNumHands);
+            }
+        }
     }
 
     @Override
@@ -78,22 +131,28 @@ public class ChanceNode extends GameTreeNode {
         float[] newPlrEquity = new float[plrNumHands];
         float[] newOppReachProbs = new float[oppNumHands];
 
-        float[][] plrEquityChildren = new float[children.size()][];
-        for (int child = 0; child < children.size(); child++) {
-
-            int numIsomorphicDeals = 0;
-            if (SolverConfig.SUIT_ISOMORPHISM) {
-                numIsomorphicDeals = isomorphismData.cards.length;
-            }
+        int numIsomorphicDeals = 0;
+        if (SolverConfig.SUIT_ISOMORPHISM) {
+            numIsomorphicDeals = isomorphismData.cards.length;
+        }
 
-            // minus 4 to account for hole cards of both players
-            int numPossibleDeals = children.size() + numIsomorphicDeals - 4;
+        // minus 4 to account for hole cards of both players
+        int numPossibleDeals = children.size() + numIsomorphicDeals - 4;
 
-            for (int hand = 0; hand < oppNumHands; hand++)
-                newOppReachProbs[hand] = oppReachProbs[hand] / numPossibleDeals;
+        for (int hand = 0; hand < oppNumHands; hand++)
+            newOppReachProbs[hand] = oppReachProbs[hand] / numPossibleDeals;
 
-            plrEquityChildren[child] = children.get(child).computeEquityRecursive(plr, newOppReachProbs);
+        float[][] plrEquityChildren;
+        if (ParallelTraversal.isEnabled(this)) {
+            plrEquityChildren = ParallelTraversal.computeChildren(children.size(),
+                    child -> children.get(child).computeEquityRecursive(plr, newOppReachProbs));
+        } else {
+            plrEquityChildren = new float[children.size()][];
+            for (int child = 0; child < children.size(); child++)
+                plrEquityChildren[child] = children.get(child).computeEquityRecursive(plr, newOppReachProbs);
+        }
 
+        for (int child = 0; child < children.size(); child++) {
             for (int h = 0; h < plrEquityChildren[child].length; h++)
                 if (!Float.isNaN(plrEquityChildren[child][h]))
                     newPlrEquity[h] += plrEquityChildren[child][h];
@@ -104,11 +163,8 @@ public class ChanceNode extends GameTreeNode {
                 byte suit = (byte) (isomorphismData.cards[i] & 3);
                 int ref = isomorphismData.references[i];
 
-                IsomorphismUtility.applySwap(plrEquityChildren[ref], isomorphismData.swaps[suit][plr]);
-                for (int h = 0; h < plrEquityChildren[ref].length; h++) {
-                    newPlrEquity[h] += plrEquityChildren[ref][h];
-                }
-                IsomorphismUtility.applySwap(plrEquityChildren[ref], isomorphismData.swaps[suit][plr]);
+                FloatKernels.accumulatePermuted(newPlrEquity, plrEquityChildren[ref],
+                        isomorphismData.permutations[suit][plr], plrNumHands);
             }
         }
 
@@ -0,0 +1,527 @@
+package poker.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import poker.SolverConfig;
+import poker.training.DiscountedCfrTrainable2;
+import poker.training.SkippedIterations;
+import poker.util.BoardHands;
+import poker.util.FloatKernels;
+import poker.util.HandSymmetry;
+import poker.util.IsomorphismUtility.IsomorphismData;
+import poker.util.RangeManager;
+import poker.util.RunoutEquity;
+
+/*
+ * Array based representation of a built game tree. Node i is described by the
+ * i-th entry of the primitive arrays below, the children of a node are stored
+ * contiguously (breadth first layout). Regrets, regret sums, cumulative
+ * regrets and current strategies of all action nodes live in one slab, indexed
+ * by the node's offset.
+ *
+ * Training and best responses only read the arrays. The object graph can be
+ * kept for exploring the solution, see SolverConfig.KEEP_OBJECT_TREE:
+ * compiling replaces the trainables of its action nodes by views into the slab.
+ */
+public class CompiledGameTree {
+
+    static final byte ACTION = 0;
+    static final byte CHANCE = 1;
+    static final byte TERMINAL = 2;
+    static final byte SHOWDOWN = 3;
+    static final byte ALL_IN = 4;
+
+    RangeManager rangeManager;
+    int numNodes;
+
+    byte[] nodeType;
+    byte[] nodePlayer; // acting player of action nodes, remaining player of terminal nodes
+    int[] firstChild;
+    byte[] numChildren;
+    int[] pot;
+    long[] board;
+    BoardHands[] boardHands;
+    HandSymmetry[] symmetry; // of action nodes whose slab stores the canonical hands only
+    int[] dataIdx; // slab offset of action nodes, index into the chance or all-in tables otherwise
+
+    IsomorphismData[] chanceIsomorphism;
+    boolean[] chanceParallel;
+
+    // shared per board, the runouts are only kept if the board has no runout equity
+    RunoutEquity[] allInEquity;
+    AllInNode.Runouts[] allInRunouts;
+    boolean[] allInParallel;
+
+    float[] slab;
+
+    // pending skipped iterations of each node and player, see GameTreeNode.skipIteration
+    float[] skipped;
+
+    private CompiledGameTree(RangeManager rangeManager, int numNodes, int numChanceNodes, int numAllInNodes) {
+        this.rangeManager = rangeManager;
+        this.numNodes = numNodes;
+
+        this.nodeType = new byte[numNodes];
+        this.nodePlayer = new byte[numNodes];
+        this.firstChild = new int[numNodes];
+        this.numChildren = new byte[numNodes];
+        this.pot = new int[numNodes];
+        this.board = new long[numNodes];
+        this.boardHands = new BoardHands[numNodes];
+        this.symmetry = new HandSymmetry[numNodes];
+        this.dataIdx = new int[numNodes];
+
+        this.chanceIsomorphism = new IsomorphismData[numChanceNodes];
+        this.chanceParallel = new boolean[numChanceNodes];
+
+        this.allInEquity = new RunoutEquity[numAllInNodes];
+        this.allInRunouts = new AllInNode.Runouts[numAllInNodes];
+        this.allInParallel = new boolean[numAllInNodes];
+
+        this.skipped = new float[numNodes * 2 * SkippedIterations.SIZE];
+    }
+
+    /*
+     * Must be called before training, the state of the object graph's
+     * trainables is not carried over. The builder compiles the tree itself when
+     * SolverConfig.COMPILED_TREE is set, without allocating those trainables.
+     */
+    public static CompiledGameTree compile(GameTreeNode root, RangeManager rangeManager) {
+
+        // breadth first order, children of a node get consecutive indices
+        List<GameTreeNode> nodes = new ArrayList<>();
+        nodes.add(root);
+        for (int i = 0; i < nodes.size(); i++)
+            nodes.addAll(nodes.get(i).children);
+
+        long slabSize = 0;
+        int numChanceNodes = 0;
+        int numAllInNodes = 0;
+        for (GameTreeNode node : nodes) {
+            if (node instanceof ActionNode) {
+                ActionNode actionNode = (ActionNode) node;
+                slabSize += DiscountedCfrTrainable2.size(node.children.size(), actionNode.getNumTrainableHands());
+            } else if (node instanceof ChanceNode) {
+                numChanceNodes++;
+            } else if (node instanceof AllInNode) {
+                numAllInNodes++;
+            }
+        }
+
+        if (slabSize > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("game tree too large for a single slab (" + slabSize + " floats)");
+
+        CompiledGameTree tree = new CompiledGameTree(rangeManager, nodes.size(), numChanceNodes, numAllInNodes);
+        tree.slab = new float[(int) slabSize];
+
+        int nextChild = 1;
+        int slabOffset = 0;
+        int chanceIdx = 0;
+        int allInIdx = 0;
+
+        for (int i = 0; i < nodes.size(); i++) {
+            GameTreeNode node = nodes.get(i);
+
+            if (node.children.size() > Byte.MAX_VALUE)
+                throw new IllegalStateException("too many children: " + node.children.size());
+
+            tree.firstChild[i] = nextChild;
+            tree.numChildren[i] = (byte) node.children.size();
+            tree.board[i] = node.board;
+            tree.boardHands[i] = node.boardHands();
+            nextChild += node.children.size();
+
+            if (node instanceof ActionNode) {
+                ActionNode actionNode = (ActionNode) node;
+                int numActions = node.children.size();
+                int numHands = actionNode.getNumTrainableHands();
+
+                tree.nodeType[i] = ACTION;
+                tree.nodePlayer[i] = (byte) actionNode.nodePlr;
+                tree.dataIdx[i] = slabOffset;
+                tree.symmetry[i] = actionNode.symmetry;
+
+                DiscountedCfrTrainable2.initialize(tree.slab, slabOffset, numActions, numHands);
+                actionNode.trainable = new DiscountedCfrTrainable2(tree.slab, slabOffset, numActions, numHands);
+                slabOffset += DiscountedCfrTrainable2.size(numActions, numHands);
+
+            } else if (node instanceof ChanceNode) {
+                tree.nodeType[i] = CHANCE;
+                tree.dataIdx[i] = chanceIdx;
+                tree.chanceIsomorphism[chanceIdx] = ((ChanceNode) node).isomorphismData;
+                tree.chanceParallel[chanceIdx] = ParallelTraversal.isEnabled(node);
+                chanceIdx++;
+
+            } else if (node instanceof TerminalNode) {
+                TerminalNode terminalNode = (TerminalNode) node;
+                tree.nodeType[i] = TERMINAL;
+                tree.nodePlayer[i] = (byte) terminalNode.rmnPlr;
+                tree.pot[i] = terminalNode.pot;
+
+            } else if (node instanceof ShowdownNode) {
+                tree.nodeType[i] = SHOWDOWN;
+                tree.pot[i] = ((ShowdownNode) node).pot;
+
+            } else if (node instanceof AllInNode) {
+                AllInNode allInNode = (AllInNode) node;
+                tree.nodeType[i] = ALL_IN;
+                tree.pot[i] = allInNode.pot;
+                tree.dataIdx[i] = allInIdx;
+                tree.allInEquity[allInIdx] = allInNode.runoutEquity;
+                if (allInNode.runoutEquity == null)
+                    tree.allInRunouts[allInIdx] = allInNode.runouts;
+                tree.allInParallel[allInIdx] = ParallelTraversal.isEnabled(node);
+                allInIdx++;
+
+            } else {
+                throw new IllegalStateException("unsupported node type: " + node.getClass().getSimpleName());
+            }
+        }
+
+        return tree;
+    }
+
+    public float[] computeCFValues(int plr, float[] oppReachProbs, int itr) {
+        float[] plrCfV = new float[rangeManager.getNumHands(plr)];
+
+        ScratchArena arena = ScratchArena.acquire();
+        try {
+            computeCFValues(0, plr, oppReachProbs, itr, arena, 0, plrCfV);
+        } finally {
+            ScratchArena.release(arena);
+        }
+        return plrCfV;
+    }
+
+    private void computeCFValues(int node, int plr, float[] oppReachProbs, int itr, ScratchArena arena,
+            int depth, float[] result) {
+        switch (nodeType[node]) {
+            case ACTION -> computeActionCFValues(node, plr, oppReachProbs, itr, arena, depth, result);
+            case CHANCE -> computeChanceCFValues(node, plr, oppReachProbs, itr, arena, depth, result);
+            case TERMINAL -> TerminalNode.computeFoldCFValues(boardHands[node], pot[node], nodePlayer[node], plr,
+                    oppReachProbs, arena.frame(depth).minusWeight, result);
+            case SHOWDOWN -> ShowdownNode.computeShowdownCFValues(rangeManager, board[node], pot[node], plr,
+                    oppReachProbs, arena.frame(depth), result);
+            case ALL_IN -> computeAllInValues(node, plr, oppReachProbs, arena, depth, result);
+            default -> throw new RuntimeException("invalid node type");
+        }
+    }
+
+    private void computeAllInValues(int node, int plr, float[] oppReachProbs, ScratchArena arena, int depth,
+            float[] result) {
+        int idx = dataIdx[node];
+        AllInNode.computeAllInValues(rangeManager, allInRunouts[idx], allInEquity[idx], pot[node], plr, oppReachProbs,
+                arena, depth, result, allInParallel[idx]);
+    }
+
+    private void computeActionCFValues(int node, int plr, float[] oppReachProbs, int itr, ScratchArena arena,
+            int depth, float[] result) {
+        int numActions = numChildren[node];
+        int nodePlr = nodePlayer[node];
+
+        int plrNumHands = rangeManager.getNumHands(plr);
+        int oppNumHands = rangeManager.getNumHands(1 - plr);
+        int nodePlrNumHands = rangeManager.getNumHands(nodePlr);
+
+        ScratchArena.Frame frame = arena.frame(depth);
+
+        pushSkippedIterations(node, plr);
+
+        float[] newPlrCfV = result;
+        float[][] plrCfvaluesActions = frame.childCFValues(numActions, plrNumHands);
+        // the current strategy is read in place from the slab, or expanded from the canonical hands
+        HandSymmetry symmetry = this.symmetry[node];
+        int numTrainableHands = symmetry != null ? symmetry.numCanonical : nodePlrNumHands;
+        float[] strategy = slab;
+        int strategyOffset = DiscountedCfrTrainable2.strategyOffset(dataIdx[node], numActions, numTrainableHands);
+
+        // without the cache it is regret matched into a buffer first
+        if (SolverConfig.LAZY_STRATEGY_NORMALIZATION) {
+            strategy = symmetry != null ? frame.compressedStrategy(numActions * numTrainableHands)
+                    : frame.strategy(numActions * nodePlrNumHands);
+            DiscountedCfrTrainable2.getStrategy(slab, dataIdx[node], numActions, numTrainableHands, strategy);
+            strategyOffset = 0;
+        }
+
+        if (symmetry != null) {
+            float[] expanded = frame.strategy(numActions * nodePlrNumHands);
+            symmetry.expand(strategy, strategyOffset, numActions, expanded);
+            strategy = expanded;
+            strategyOffset = 0;
+        }
+
+        Arrays.fill(newPlrCfV, 0, plrNumHands, 0);
+
+        for (int a = 0; a < numActions; a++) {
+
+            float[] newOppHandWeight = oppReachProbs;
+
+            // node player is opponent
+            if (nodePlr != plr) {
+                newOppHandWeight = frame.oppReachProbs(oppNumHands);
+                FloatKernels.multiply(oppReachProbs, strategy, strategyOffset + a * oppNumHands, newOppHandWeight,
+                        oppNumHands);
+
+                // no live opponent hand reaches the child, all its values are zero
+                if (SolverConfig.SKIP_UNREACHED_SUBTREES
+                        && FloatKernels.isZero(newOppHandWeight, boardHands[node].hands[1 - plr])) {
+                    skipIteration(firstChild[node] + a, plr, itr);
+                    continue;
+                }
+            }
+
+            computeCFValues(firstChild[node] + a, plr, newOppHandWeight, itr, arena, depth + 1,
+                    plrCfvaluesActions[a]);
+
+            if (nodePlr == plr)
+                FloatKernels.accumulateProduct(newPlrCfV, strategy, strategyOffset + a * plrNumHands,
+                        plrCfvaluesActions[a], plrNumHands);
+            else
+                FloatKernels.accumulate(newPlrCfV, plrCfvaluesActions[a], plrNumHands);
+        }
+
+        if (nodePlr == plr) {
+            if (symmetry != null) {
+                float[][] compressed = ActionNode.compressCFValues(symmetry, newPlrCfV, plrCfvaluesActions,
+                        numActions, frame);
+                DiscountedCfrTrainable2.updateRegrets(slab, dataIdx[node], numActions, symmetry.numCanonical,
+                        compressed[numActions], compressed, itr);
+            } else {
+                DiscountedCfrTrainable2.updateRegrets(slab, dataIdx[node], numActions, plrNumHands, newPlrCfV,
+                        plrCfvaluesActions, itr);
+            }
+        }
+    }
+
+    // see GameTreeNode.skipIteration
+    private void skipIteration(int node, int plr, int itr) {
+        if (numChildren[node] > 0)
+            SkippedIterations.add(skipped, skippedOffset(node, plr), itr);
+    }
+
+    private static int skippedOffset(int node, int plr) {
+        return (2 * node + plr) * SkippedIterations.SIZE;
+    }
+
+    // see GameTreeNode.pushSkippedIterations
+    private void pushSkippedIterations(int node, int plr) {
+        int offset = skippedOffset(node, plr);
+        if (!SkippedIterations.isPending(skipped, offset))
+            return;
+
+        if (nodeType[node] == ACTION && nodePlayer[node] == plr) {
+            HandSymmetry symmetry = this.symmetry[node];
+            int numHands = symmetry != null ? symmetry.numCanonical : rangeManager.getNumHands(plr);
+            DiscountedCfrTrainable2.applySkippedIterations(slab, dataIdx[node], numChildren[node], numHands,
+                    skipped, offset);
+        }
+
+        for (int child = firstChild[node]; child < firstChild[node] + numChildren[node]; child++) {
+            if (numChildren[child] > 0)
+                SkippedIterations.append(skipped, skippedOffset(child, plr), skipped, offset);
+        }
+
+        SkippedIterations.clear(skipped, offset);
+    }
+
+    // see GameTreeNode.flushSkippedIterations, parents come before their children
+    public void flushSkippedIterations() {
+        for (int node = 0; node < numNodes; node++) {
+            pushSkippedIterations(node, 0);
+            pushSkippedIterations(node, 1);
+        }
+    }
+
+    private void computeChanceCFValues(int node, int plr, float[] oppReachProbs, int itr, ScratchArena arena,
+            int depth, float[] result) {
+        int numDeals = numChildren[node];
+        int first = firstChild[node];
+        IsomorphismData isomorphismData = chanceIsomorphism[dataIdx[node]];
+
+        int plrNumHands = rangeManager.getNumHands(plr);
+        int oppNumHands = rangeManager.getNumHands(1 - plr);
+
+        ScratchArena.Frame frame = arena.frame(depth);
+
+        pushSkippedIterations(node, plr);
+
+        float[] newPlrCFV = result;
+        float[] newOppReachProbs = frame.oppReachProbs(oppNumHands);
+        float[][] plrCFVChildren = frame.childCFValues(numDeals, plrNumHands);
+
+        int numIsomorphicDeals = 0;
+        if (SolverConfig.SUIT_ISOMORPHISM) {
+            numIsomorphicDeals = isomorphismData.cards.length;
+        }
+
+        // minus 4 to account for hole cards of both players
+        int numPossibleDeals = numDeals + numIsomorphicDeals - 4;
+
+        for (int hand = 0; hand < oppNumHands; hand++)
+            newOppReachProbs[hand] = oppReachProbs[hand] / numPossibleDeals;
+
+        if (chanceParallel[dataIdx[node]]) {
+            ParallelTraversal.traverseChildren(numDeals, (child, childArena) -> computeCFValues(first + child,
+                    plr, newOppReachProbs, itr, childArena, 0, plrCFVChildren[child]));
+        } else {
+            for (int child = 0; child < numDeals; child++)
+                computeCFValues(first + child, plr, newOppReachProbs, itr, arena, depth + 1, plrCFVChildren[child]);
+        }
+
+        accumulateDeals(node, plr, plrCFVChildren, newPlrCFV);
+    }
+
+    // values of a chance node from the ones of its deals, isomorphic deals are mirrored from their reference
+    private void accumulateDeals(int node, int plr, float[][] plrValuesChildren, float[] result) {
+        int numDeals = numChildren[node];
+        int plrNumHands = rangeManager.getNumHands(plr);
+        IsomorphismData isomorphismData = chanceIsomorphism[dataIdx[node]];
+
+        Arrays.fill(result, 0, plrNumHands, 0);
+
+        for (int child = 0; child < numDeals; child++)
+            FloatKernels.accumulate(result, plrValuesChildren[child], plrNumHands);
+
+        if (SolverConfig.SUIT_ISOMORPHISM) {
+            for (int i = 0; i < isomorphismData.references.length; i++) {
+                byte suit = (byte) (isomorphismData.cards[i] & 3);
+                int ref = isomorphismData.references[i];
+
+                FloatKernels.accumulatePermuted(result, plrValuesChildren[ref],
+                        isomorphismData.permutations[suit][plr], plrNumHands);
+            }
+        }
+    }
+
+    // see GameTreeNode.computeBestResponseRecursive
+    public float[] computeBestResponse(int plr, float[] oppReachProbs) {
+        float[] plrBrV = new float[rangeManager.getNumHands(plr)];
+
+        ScratchArena arena = ScratchArena.acquire();
+        try {
+            computeBestResponse(0, plr, oppReachProbs, arena, 0, plrBrV);
+        } finally {
+            ScratchArena.release(arena);
+        }
+        return plrBrV;
+    }
+
+    private void computeBestResponse(int node, int plr, float[] oppReachProbs, ScratchArena arena, int depth,
+            float[] result) {
+        switch (nodeType[node]) {
+            case ACTION -> computeActionBestResponse(node, plr, oppReachProbs, arena, depth, result);
+            case CHANCE -> computeChanceBestResponse(node, plr, oppReachProbs, arena, depth, result);
+            case TERMINAL -> TerminalNode.computeFoldCFValues(boardHands[node], pot[node], nodePlayer[node], plr,
+                    oppReachProbs, arena.frame(depth).minusWeight, result);
+            case SHOWDOWN -> ShowdownNode.computeShowdownCFValues(rangeManager, board[node], pot[node], plr,
+                    oppReachProbs, arena.frame(depth), result);
+            case ALL_IN -> computeAllInValues(node, plr, oppReachProbs, arena, depth, result);
+            default -> throw new RuntimeException("invalid node type");
+        }
+    }
+
+    private void computeActionBestResponse(int node, int plr, float[] oppReachProbs, ScratchArena arena, int depth,
+            float[] result) {
+        int numActions = numChildren[node];
+
+        int plrNumHands = rangeManager.getNumHands(plr);
+        int oppNumHands = rangeManager.getNumHands(1 - plr);
+
+        ScratchArena.Frame frame = arena.frame(depth);
+        float[][] plrValuesActions = frame.childCFValues(numActions, plrNumHands);
+
+        // the best responding player picks the best action for every hand
+        if (nodePlayer[node] == plr) {
+            for (int a = 0; a < numActions; a++)
+                computeBestResponse(firstChild[node] + a, plr, oppReachProbs, arena, depth + 1, plrValuesActions[a]);
+
+            for (int h = 0; h < plrNumHands; h++) {
+                result[h] = plrValuesActions[0][h];
+                for (int a = 1; a < numActions; a++)
+                    result[h] = Math.max(result[h], plrValuesActions[a][h]);
+            }
+            return;
+        }
+
+        float[] strategy = getAverageStrategy(node, frame);
+        float[] newOppHandWeight = frame.oppReachProbs(oppNumHands);
+
+        Arrays.fill(result, 0, plrNumHands, 0);
+
+        for (int a = 0; a < numActions; a++) {
+            FloatKernels.multiply(oppReachProbs, strategy, a * oppNumHands, newOppHandWeight, oppNumHands);
+            if (FloatKernels.isZero(newOppHandWeight, boardHands[node].hands[1 - plr]))
+                continue;
+
+            computeBestResponse(firstChild[node] + a, plr, newOppHandWeight, arena, depth + 1, plrValuesActions[a]);
+            FloatKernels.accumulate(result, plrValuesActions[a], plrNumHands);
+        }
+    }
+
+    // average strategy of all hands of the node player, in the strategy buffer of the frame
+    private float[] getAverageStrategy(int node, ScratchArena.Frame frame) {
+        int numActions = numChildren[node];
+        int numHands = rangeManager.getNumHands(nodePlayer[node]);
+        HandSymmetry symmetry = this.symmetry[node];
+
+        float[] strategy = frame.strategy(numActions * numHands);
+        if (symmetry == null) {
+            DiscountedCfrTrainable2.getAverageStrategy(slab, dataIdx[node], numActions, numHands, strategy);
+            return strategy;
+        }
+
+        float[] compressed = frame.compressedStrategy(numActions * symmetry.numCanonical);
+        DiscountedCfrTrainable2.getAverageStrategy(slab, dataIdx[node], numActions, symmetry.numCanonical, compressed);
+        symmetry.expand(compressed, 0, numActions, strategy);
+        return strategy;
+    }
+
+    private void computeChanceBestResponse(int node, int plr, float[] oppReachProbs, ScratchArena arena, int depth,
+            float[] result) {
+        int numDeals = numChildren[node];
+        int first = firstChild[node];
+        IsomorphismData isomorphismData = chanceIsomorphism[dataIdx[node]];
+
+        int plrNumHands = rangeManager.getNumHands(plr);
+        int oppNumHands = rangeManager.getNumHands(1 - plr);
+
+        ScratchArena.Frame frame = arena.frame(depth);
+
+        float[] newOppReachProbs = frame.oppReachProbs(oppNumHands);
+        float[][] plrValuesChildren = frame.childCFValues(numDeals, plrNumHands);
+
+        int numIsomorphicDeals = 0;
+        if (SolverConfig.SUIT_ISOMORPHISM) {
+            numIsomorphicDeals = isomorphismData.cards.length;
+        }
+
+        // minus 4 to account for hole cards of both players
+        int numPossibleDeals = numDeals + numIsomorphicDeals - 4;
+
+        for (int hand = 0; hand < oppNumHands; hand++)
+            newOppReachProbs[hand] = oppReachProbs[hand] / numPossibleDeals;
+
+        if (chanceParallel[dataIdx[node]]) {
+            ParallelTraversal.traverseChildren(numDeals, (child, childArena) -> computeBestResponse(first + child,
+                    plr, newOppReachProbs, childArena, 0, plrValuesChildren[child]));
+        } else {
+            for (int child = 0; child < numDeals; child++)
+                computeBestResponse(first + child, plr, newOppReachProbs, arena, depth + 1, plrValuesChildren[child]);
+        }
+
+        accumulateDeals(node, plr, plrValuesChildren, result);
+    }
+
+    // of the root, see GameTreeNode.computeRealizationProbability
+    public float[] computeRealizationProbability(int plr, float[] oppWeights) {
+        float[] normalizationSum = new float[rangeManager.getNumHands(plr)];
+        boardHands[0].computeRealizationWeights(plr, oppWeights, new float[52], normalizationSum);
+        return normalizationSum;
+    }
+
+    public int getNumNodes() {
+        return numNodes;
+    }
+}
@@ -1,19 +1,32 @@
 package poker.tree;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
 
 import poker.SolverConfig;
+import poker.SolverConfig.Storage;
 import poker.training.DiscountedCfrTrainable;
 import poker.training.DiscountedCfrTrainable2;
+import poker.training.OffHeapDiscountedCfrTrainable;
+import poker.training.QuantizedDiscountedCfrTrainable;
 import poker.training.Trainable;
+import poker.training.TrainableArena;
 import poker.util.CardUtility;
+import poker.util.HandSymmetry;
 import poker.util.IsomorphismUtility;
 import poker.util.RangeManager;
 import poker.util.IsomorphismUtility.IsomorphismData;
 
-public class GameTreeBuilder {
+public class GameTreeBuilder implements AutoCloseable {
 
     GameTreeNode root;
+    CompiledGameTree compiledTree;
+    TrainableArena trainableArena;
 
     GameTreeBuildSettings settings;
     RangeManager rangeManager;
@@ -24,6 +37,15 @@ public class GameTreeBuilder {
 
     int nodeCnt = 0;
 
+    // river boards of the showdown nodes, their tables are built in the solver pool while the tree grows
+    Set<Long> riverBoards = new HashSet<>();
+    List<ForkJoinTask<?>> showdownTableTasks = new ArrayList<>();
+    long showdownTablesStart;
+    long showdownTablesMillis;
+
+    // the runouts only depend on the board, all-in nodes of a board share them
+    Map<Long, AllInNode.Runouts> allInRunouts = new HashMap<>();
+
     public GameTreeBuilder(GameState initialGS, GameTreeBuildSettings settings, RangeManager rangeManager) {
         this.initialGS = initialGS;
         this.settings = settings;
@@ -35,11 +57,18 @@ public class GameTreeBuilder {
         // BUILD ROOT NODE
 
         int plr = initialGS.oopIsPlaying ? 0 : 1;
-        int numHands = rangeManager.getNumHands(plr);
+        HandSymmetry symmetry = getHandSymmetry(initialGS, plr);
+        int numHands = symmetry != null ? symmetry.numCanonical : rangeManager.getNumHands(plr);
 
         List<ActionState> childActionStates = new ActionState(initialGS, settings).getFollowUpStates();
-        Trainable trainable = new DiscountedCfrTrainable(childActionStates.size(), numHands);
-        this.root = new ActionNode(initialGS.board, rangeManager, trainable, plr);
+        Trainable trainable = null;
+        if (SolverConfig.STORAGE == Storage.QUANTIZED)
+            trainable = new QuantizedDiscountedCfrTrainable(childActionStates.size(), numHands);
+        else if (allocateTrainables())
+            trainable = new DiscountedCfrTrainable(childActionStates.size(), numHands);
+        ActionNode rootNode = new ActionNode(initialGS.board, rangeManager, trainable, plr);
+        rootNode.symmetry = symmetry;
+        this.root = rootNode;
 
         this.root.path = "";
         this.numberNodes++;
@@ -47,6 +76,79 @@ public class GameTreeBuilder {
         for (ActionState childActionState : childActionStates) {
             buildActionNodes(this.root, childActionState, childActionState.getAction().toString());
         }
+
+        awaitShowdownTables();
+
+        // used to decide which chance nodes are worth traversing in parallel
+        this.root.computeSubtreeSize();
+
+        // trainables are views into the slab of the compiled tree or the native arena
+        if (SolverConfig.STORAGE == Storage.OFF_HEAP) {
+            this.trainableArena = new TrainableArena(computeTrainableSize(root));
+            bindTrainables(root);
+        } else if (SolverConfig.STORAGE == Storage.HEAP && SolverConfig.COMPILED_TREE) {
+            this.compiledTree = CompiledGameTree.compile(root, rangeManager);
+
+            // training and exploitability only need the compiled tree, the explorer needs the object graph
+            if (!SolverConfig.KEEP_OBJECT_TREE)
+                this.root = null;
+        }
+        allInRunouts.clear();
+    }
+
+    // the first iteration would otherwise build every table on first touch inside the recursion
+    private void prewarmShowdownTable(long board) {
+        if (!SolverConfig.PREWARM_SHOWDOWN_TABLES || !riverBoards.add(board))
+            return;
+
+        if (showdownTableTasks.isEmpty())
+            showdownTablesStart = System.nanoTime();
+
+        if (SolverConfig.PARALLEL_TRAVERSAL)
+            showdownTableTasks.add(ParallelTraversal.POOL.submit(() -> rangeManager.getShowdownTable(board)));
+        else
+            rangeManager.getShowdownTable(board);
+    }
+
+    private void awaitShowdownTables() {
+        for (ForkJoinTask<?> task : showdownTableTasks)
+            task.join();
+        showdownTableTasks.clear();
+
+        if (!riverBoards.isEmpty())
+            showdownTablesMillis = (System.nanoTime() - showdownTablesStart) / 1000000;
+    }
+
+    private boolean allocateTrainables() {
+        return SolverConfig.STORAGE == Storage.HEAP && !SolverConfig.COMPILED_TREE;
+    }
+
+    private long computeTrainableSize(GameTreeNode node) {
+        long size = 0;
+        if (node instanceof ActionNode)
+            size += OffHeapDiscountedCfrTrainable.size(node.children.size(),
+                    ((ActionNode) node).getNumTrainableHands());
+
+        for (GameTreeNode child : node.children)
+            size += computeTrainableSize(child);
+        return size;
+    }
+
+    private void bindTrainables(GameTreeNode node) {
+        if (node instanceof ActionNode) {
+            ActionNode actionNode = (ActionNode) node;
+            actionNode.trainable = trainableArena.allocate(node.children.size(), actionNode.getNumTrainableHands());
+        }
+
+        for (GameTreeNode child : node.children)
+            bindTrainables(child);
+    }
+
+    // releases the native memory of off-heap trainables, the tree must not be used afterwards
+    @Override
+    public void close() {
+        if (trainableArena != null)
+            trainableArena.close();
     }
 
     private void buildActionNodes(GameTreeNode parent, ActionState actionState, String edgeLabel) {
@@ -61,6 +163,8 @@ public class GameTreeBuilder {
             } else if (gameState.gameShowdown()) {
                 if (gameState.street == Street.RIVER) {
                     buildShowdownNode(parent, gameState, edgeLabel);
+                } else if (SolverConfig.ALL_IN_NODES && gameState.street != Street.PRE_FLOP) {
+                    buildAllInNode(parent, gameState, edgeLabel);
                 } else {
                     buildChanceNode(parent, gameState, edgeLabel);
                 }
@@ -72,14 +176,20 @@ public class GameTreeBuilder {
 
         List<ActionState> childActionStates = actionState.getFollowUpStates();
 
-        int numHands = rangeManager.getNumHands(gameState.oopIsPlaying ? 0 : 1);
+        int nodePlr = gameState.oopIsPlaying ? 0 : 1;
+        HandSymmetry symmetry = getHandSymmetry(gameState, nodePlr);
+        int numHands = symmetry != null ? symmetry.numCanonical : rangeManager.getNumHands(nodePlr);
         int numActions = childActionStates.size();
-        Trainable trainable = new DiscountedCfrTrainable2(numActions, numHands); // TODO
+        Trainable trainable = null;
+        if (SolverConfig.STORAGE == Storage.QUANTIZED)
+            trainable = new QuantizedDiscountedCfrTrainable(numActions, numHands);
+        else if (allocateTrainables())
+            trainable = new DiscountedCfrTrainable2(numActions, numHands); // TODO
 
-        ActionNode actionNode = new ActionNode(parent, gameState.oopIsPlaying ? 0 : 1,
-                trainable);
+        ActionNode actionNode = new ActionNode(parent, nodePlr, trainable);
         actionNode.path = parent.path + edgeLabel;
         actionNode.board = gameState.board;
+        actionNode.symmetry = symmetry;
 
         parent.addChild(actionNode, edgeLabel);
 
@@ -88,16 +198,37 @@ public class GameTreeBuilder {
         }
     }
 
-    private void buildChanceNode(GameTreeNode parent, GameState gameState, String edgeLabel) {
+    // null if both modes are off or the trainable of the node would store all hands of plr anyway
+    private HandSymmetry getHandSymmetry(GameState gameState, int plr) {
+        if (!SolverConfig.HAND_SYMMETRY && !SolverConfig.COMPACT_BOARD_HANDS)
+            return null;
+
+        byte[] suitClasses = { 0, 1, 2, 3 };
+        if (SolverConfig.HAND_SYMMETRY) {
+            long turnBoard = gameState.street == Street.FLOP ? gameState.flop : gameState.flop | 1L << gameState.turn;
+            suitClasses = IsomorphismUtility.getSuitClasses(rangeManager, gameState.flop, turnBoard,
+                    gameState.board);
+        }
+        long board = SolverConfig.COMPACT_BOARD_HANDS ? gameState.board : 0L;
+
+        HandSymmetry symmetry = rangeManager.getHandSymmetry(plr, board, suitClasses);
+        return symmetry.isTrivial() ? null : symmetry;
+    }
 
-        IsomorphismData data = null;
+    private IsomorphismData getIsomorphismData(GameState gameState) {
         if (SolverConfig.SUIT_ISOMORPHISM) {
             if (gameState.street == Street.FLOP) {
-                data = IsomorphismUtility.getTurnIsomorphismData(rangeManager, gameState.flop);
+                return IsomorphismUtility.getTurnIsomorphismData(rangeManager, gameState.flop);
             } else if (gameState.street == Street.TURN) {
-                data = IsomorphismUtility.getRiverIsomorphismData(rangeManager, gameState.flop, gameState.turn);
+                return IsomorphismUtility.getRiverIsomorphismData(rangeManager, gameState.flop, gameState.turn);
             }
         }
+        return null;
+    }
+
+    private void buildChanceNode(GameTreeNode parent, GameState gameState, String edgeLabel) {
+
+        IsomorphismData data = getIsomorphismData(gameState);
 
         ChanceNode chanceNode = new ChanceNode(parent, data);
         chanceNode.board = gameState.board;
@@ -124,6 +255,67 @@ public class GameTreeBuilder {
         }
     }
 
+    private void buildAllInNode(GameTreeNode parent, GameState gameState, String edgeLabel) {
+
+        AllInNode.Runouts runouts = allInRunouts.computeIfAbsent(gameState.board, board -> buildRunouts(gameState));
+
+        AllInNode allInNode = new AllInNode(parent, gameState.pot, runouts);
+        allInNode.board = gameState.board;
+        allInNode.path = parent.path + edgeLabel;
+
+        // null over the budget of the runout equities, the river showdown tables are needed then
+        if (AllInNode.usesRunoutEquity(allInNode.runouts, rangeManager.getBoardHands(gameState.board)))
+            allInNode.runoutEquity = rangeManager.getRunoutEquity(gameState.board);
+        if (allInNode.runoutEquity == null)
+            prewarmShowdownTables(allInNode.runouts);
+
+        parent.addChild(allInNode, edgeLabel);
+    }
+
+    // the deals buildChanceNode would create, down to the river
+    private AllInNode.Runouts buildRunouts(GameState gameState) {
+        AllInNode.Runouts runouts = new AllInNode.Runouts();
+        runouts.isomorphismData = getIsomorphismData(gameState);
+
+        List<GameState> deals = new ArrayList<>();
+        for (byte card = 0; card < 52; card++) {
+
+            byte suit = (byte) (card & 3);
+
+            if (CardUtility.overlapBoard(gameState.board, card))
+                continue;
+
+            if (SolverConfig.SUIT_ISOMORPHISM && runouts.isomorphismData.suits[suit])
+                continue;
+
+            deals.add(gameState.finishStreet(card));
+        }
+
+        runouts.cards = new byte[deals.size()];
+        runouts.boards = new long[deals.size()];
+        if (gameState.street != Street.TURN)
+            runouts.next = new AllInNode.Runouts[deals.size()];
+
+        for (int deal = 0; deal < deals.size(); deal++) {
+            GameState dealGameState = deals.get(deal);
+            runouts.boards[deal] = dealGameState.board;
+            runouts.cards[deal] = (byte) Long.numberOfTrailingZeros(dealGameState.board & ~gameState.board);
+
+            if (runouts.next != null)
+                runouts.next[deal] = buildRunouts(dealGameState);
+        }
+        return runouts;
+    }
+
+    private void prewarmShowdownTables(AllInNode.Runouts runouts) {
+        for (int deal = 0; deal < runouts.cards.length; deal++) {
+            if (runouts.next != null)
+                prewarmShowdownTables(runouts.next[deal]);
+            else
+                prewarmShowdownTable(runouts.boards[deal]);
+        }
+    }
+
     private void buildTerminalNode(GameTreeNode parent, GameState gameState, String edgeLabel) {
 
         TerminalNode terminalNode = new TerminalNode(parent, gameState.board, gameState.oopIsPlaying ? 0 : 1,
@@ -141,12 +333,31 @@ public class GameTreeBuilder {
         showdownNode.path = parent.path + edgeLabel;
 
         parent.addChild(showdownNode, edgeLabel);
+        prewarmShowdownTable(gameState.board);
+    }
+
+    public CompiledGameTree getCompiledTree() {
+        return compiledTree;
+    }
+
+    public TrainableArena getTrainableArena() {
+        return trainableArena;
+    }
+
+    public int getNumRiverBoards() {
+        return riverBoards.size();
+    }
+
+    // from the first river board until all showdown tables were built
+    public long getShowdownTablesMillis() {
+        return showdownTablesMillis;
     }
 
     public int getNumberNodes() {
         return numberNodes;
     }
 
+    // null if the tree was compiled without SolverConfig.KEEP_OBJECT_TREE
     public GameTreeNode getRoot() {
         return root;
     }
@@ -3,7 +3,8 @@ package poker.tree;
 import java.util.ArrayList;
 import java.util.List;
 
-import poker.util.CardUtility;
+import poker.training.SkippedIterations;
+import poker.util.BoardHands;
 import poker.util.RangeManager;
 
 public abstract class GameTreeNode {
@@ -17,9 +18,15 @@ public abstract class GameTreeNode {
     public float[] equity;
 
     public long board;
+    private BoardHands boardHands;
 
     String path;
 
+    int subtreeSize;
+
+    // pending factors of the iterations each player's traversal skipped this subtree in, see skipIteration
+    float[] skipped;
+
     public GameTreeNode(GameTreeNode parent) {
         this.parent = parent;
         this.rangeManager = parent.rangeManager;
@@ -44,62 +51,133 @@ public abstract class GameTreeNode {
     }
 
 
-    public abstract float[] computeCFValuesRecursive(int plr, float[] oppReachProbs, int itr);
-
-    public abstract float[] computeEquityRecursive(int plr, float[] oppReachProbs);
+    int computeSubtreeSize() {
+        subtreeSize = 1;
+        for (GameTreeNode child : children)
+            subtreeSize += child.computeSubtreeSize();
+        return subtreeSize;
+    }
 
-    public float[] computeRealizationProbability(int plr, float[] oppWeights) {
+    public float[] computeCFValuesRecursive(int plr, float[] oppReachProbs, int itr) {
+        float[] plrCfV = new float[rangeManager.getNumHands(plr)];
 
-        int plrNumHands = rangeManager.getNumHands(plr);
-        int oppNumHands = rangeManager.getNumHands(1 - plr);
-        byte[] plrHands = rangeManager.getHands(plr);
-        byte[] oppHands = rangeManager.getHands(1 - plr);
-        int[] plrHandsCrossRefTable = rangeManager.getHandsCrossRefTable(plr);
+        ScratchArena arena = ScratchArena.acquire();
+        try {
+            computeCFValues(plr, oppReachProbs, itr, arena, 0, plrCfV);
+        } finally {
+            ScratchArena.release(arena);
+        }
+        return plrCfV;
+    }
 
-        float[] normalizationSum = new float[plrNumHands];
+    /*
+     * Writes the counterfactual values of plr into result. Temporary buffers are
+     * taken from the arena frame of the given depth, children use the frames
+     * below.
+     */
+    abstract void computeCFValues(int plr, float[] oppReachProbs, int itr, ScratchArena arena, int depth,
+            float[] result);
+
+    /*
+     * The traversal of plr in iteration itr did not visit this subtree, because
+     * no opponent hand reaches it. A traversal would have updated the trainables
+     * of plr's nodes with values of zero. The iteration is recorded here and
+     * pushed one level down whenever plr's traversal visits the node, so a skip
+     * costs the same for subtrees of any size.
+     */
+    void skipIteration(int plr, int itr) {
+        if (!children.isEmpty())
+            SkippedIterations.add(skipped(), plr * SkippedIterations.SIZE, itr);
+    }
 
-        float oppWeightSum = 0;
-        float[] minusWeight = new float[52];
+    // iterations skipped by an ancestor, after those recorded here
+    private void appendSkippedIterations(int plr, float[] later, int laterOffset) {
+        if (!children.isEmpty())
+            SkippedIterations.append(skipped(), plr * SkippedIterations.SIZE, later, laterOffset);
+    }
 
-        for (int h = 0; h < oppNumHands; h++) {
-            if(oppWeights[h] == 0)
-                continue;
+    private float[] skipped() {
+        if (skipped == null)
+            skipped = new float[2 * SkippedIterations.SIZE];
+        return skipped;
+    }
 
-            byte card1 = oppHands[2 * h];
-            byte card2 = oppHands[2 * h + 1];
+    // called first when the traversal of plr visits the node
+    void pushSkippedIterations(int plr) {
+        int offset = plr * SkippedIterations.SIZE;
+        if (skipped == null || !SkippedIterations.isPending(skipped, offset))
+            return;
 
-            if (CardUtility.overlapBoard(board, card1, card2))
-                continue;
+        applySkippedIterations(plr, skipped, offset);
+        for (GameTreeNode child : children)
+            child.appendSkippedIterations(plr, skipped, offset);
 
-                minusWeight[card1] += oppWeights[h];
-                minusWeight[card2] += oppWeights[h];
-                oppWeightSum += oppWeights[h];
-        }
+        SkippedIterations.clear(skipped, offset);
+    }
 
-        if (oppWeightSum == 0)
-            return normalizationSum;
+    // hands the skipped iterations of plr to the node's own trainable
+    void applySkippedIterations(int plr, float[] skipped, int offset) {
+    }
 
-        for (int h = 0; h < plrNumHands; h++) {
-            byte card1 = plrHands[2 * h];
-            byte card2 = plrHands[2 * h + 1];
+    /*
+     * Pushes the skipped iterations of both players down to the trainables.
+     * Must be called on the root before average strategies are read.
+     */
+    public void flushSkippedIterations() {
+        pushSkippedIterations(0);
+        pushSkippedIterations(1);
 
-            if (CardUtility.overlapBoard(board, card1, card2))
-                continue;
+        for (GameTreeNode child : children)
+            child.flushSkippedIterations();
+    }
 
-            float sameHandOppWeight = 0;
-            if (plrHandsCrossRefTable[h] >= 0)
-                sameHandOppWeight = oppWeights[plrHandsCrossRefTable[h]];
+    public abstract float[] computeEquityRecursive(int plr, float[] oppReachProbs);
 
-            normalizationSum[h] = (oppWeightSum
-                    - minusWeight[card1]
-                    - minusWeight[card2]
-                    + sameHandOppWeight);
+    public float[] computeBestResponseRecursive(int plr, float[] oppReachProbs) {
+        float[] plrBrV = new float[rangeManager.getNumHands(plr)];
 
+        ScratchArena arena = ScratchArena.acquire();
+        try {
+            computeBestResponse(plr, oppReachProbs, arena, 0, plrBrV);
+        } finally {
+            ScratchArena.release(arena);
         }
+        return plrBrV;
+    }
 
+    /*
+     * Writes the counterfactual values of plr's best response against the
+     * opponent's average strategy into result, buffers are used as in
+     * computeCFValues.
+     */
+    abstract void computeBestResponse(int plr, float[] oppReachProbs, ScratchArena arena, int depth, float[] result);
+
+    // set on first use, the board of a node does not change once the tree is built
+    BoardHands boardHands() {
+        if (boardHands == null)
+            boardHands = rangeManager.getBoardHands(board);
+        return boardHands;
+    }
+
+    public float[] computeRealizationProbability(int plr, float[] oppWeights) {
+        float[] normalizationSum = new float[rangeManager.getNumHands(plr)];
+        boardHands().computeRealizationWeights(plr, oppWeights, new float[52], normalizationSum);
         return normalizationSum;
     }
 
+    void storeExpectedValue(int plr, float[] oppReachProbs, float[] plrCfV, ScratchArena.Frame frame) {
+        int plrNumHands = rangeManager.getNumHands(plr);
+
+        float[] realizationProb = frame.realizationProbs(plrNumHands);
+        boardHands().computeRealizationWeights(plr, oppReachProbs, frame.minusWeight, realizationProb);
+
+        if (this.expectedValue == null || this.expectedValue.length != plrNumHands)
+            this.expectedValue = new float[plrNumHands];
+
+        for (int i = 0; i < plrNumHands; i++)
+            this.expectedValue[i] = plrCfV[i] / realizationProb[i];
+    }
+
     public List<GameTreeNode> getChildren() {
         return this.children;
     }
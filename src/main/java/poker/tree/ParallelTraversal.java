@@ -0,0 +1,140 @@
+package poker.tree;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntFunction;
+
+import poker.SolverConfig;
+
+/*
+ * Fans the children of a node out as fork-join tasks. Every child subtree owns
+ * its own trainables, so the subtrees can be traversed concurrently. Results are
+ * stored by child index, so callers can sum them in the same order as a
+ * sequential traversal and get bit-identical values.
+ */
+class ParallelTraversal {
+
+    interface ChildTraversal {
+        // writes the result of the child into a buffer owned by the caller
+        void traverse(int child, ScratchArena arena);
+    }
+
+    static final ForkJoinPool POOL = new ForkJoinPool(SolverConfig.NUM_THREADS);
+
+    static boolean isEnabled(GameTreeNode node) {
+        return isEnabled(node.subtreeSize);
+    }
+
+    static boolean isEnabled(int subtreeSize) {
+        return SolverConfig.PARALLEL_TRAVERSAL && subtreeSize >= SolverConfig.PARALLEL_SUBTREE_CUTOFF;
+    }
+
+    static void traverseChildren(int numChildren, ChildTraversal traversal) {
+        invoke(new ArenaChildrenTask(numChildren, traversal));
+    }
+
+    static float[][] computeChildren(int numChildren, IntFunction<float[]> traversal) {
+        return invoke(new ChildrenTask(numChildren, traversal));
+    }
+
+    private static <T> T invoke(ForkJoinTask<T> task) {
+        // already running inside the solver pool (nested chance node)
+        if (ForkJoinTask.getPool() == POOL)
+            return task.invoke();
+
+        return POOL.invoke(task);
+    }
+
+    private static class ArenaChildrenTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        int numChildren;
+        ChildTraversal traversal;
+
+        ArenaChildrenTask(int numChildren, ChildTraversal traversal) {
+            this.numChildren = numChildren;
+            this.traversal = traversal;
+        }
+
+        @Override
+        protected void compute() {
+            ArenaChildTask[] tasks = new ArenaChildTask[numChildren];
+            for (int child = 0; child < tasks.length; child++)
+                tasks[child] = new ArenaChildTask(child, traversal);
+
+            invokeAll(tasks);
+        }
+    }
+
+    private static class ArenaChildTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        int child;
+        ChildTraversal traversal;
+
+        ArenaChildTask(int child, ChildTraversal traversal) {
+            this.child = child;
+            this.traversal = traversal;
+        }
+
+        @Override
+        protected void compute() {
+            ScratchArena arena = ScratchArena.acquire();
+            try {
+                traversal.traverse(child, arena);
+            } finally {
+                ScratchArena.release(arena);
+            }
+        }
+    }
+
+    private static class ChildrenTask extends RecursiveTask<float[][]> {
+
+        private static final long serialVersionUID = 1L;
+
+        int numChildren;
+        IntFunction<float[]> traversal;
+
+        ChildrenTask(int numChildren, IntFunction<float[]> traversal) {
+            this.numChildren = numChildren;
+            this.traversal = traversal;
+        }
+
+        @Override
+        protected float[][] compute() {
+            ChildTask[] tasks = new ChildTask[numChildren];
+            for (int child = 0; child < tasks.length; child++)
+                tasks[child] = new ChildTask(child, traversal);
+
+            invokeAll(tasks);
+
+            float[][] results = new float[tasks.length][];
+            for (int child = 0; child < tasks.length; child++)
+                results[child] = tasks[child].join();
+
+            return results;
+        }
+    }
+
+    private static class ChildTask extends RecursiveTask<float[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        int child;
+        IntFunction<float[]> traversal;
+
+        ChildTask(int child, IntFunction<float[]> traversal) {
+            this.child = child;
+            this.traversal = traversal;
+        }
+
+        @Override
+        protected float[] compute() {
+            return traversal.apply(child);
+        }
+    }
+}
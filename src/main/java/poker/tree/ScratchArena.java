@@ -0,0 +1,119 @@
+package poker.tree;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/*
+ * Scratch buffers for the CFR traversal, indexed by tree depth. A node only
+ * uses the frame of its own depth and its children use the frames below, so a
+ * traversal runs without allocating once the buffers have grown to the size of
+ * the largest node. Buffers are never shrunk and may be longer than requested.
+ *
+ * Arenas are handed out per traversing task instead of being kept in a thread
+ * local: a fork-join worker that waits for forked children may execute an
+ * unrelated subtree in the meantime, which would overwrite the frames of the
+ * waiting traversal.
+ */
+class ScratchArena {
+
+    private static final ArrayDeque<ScratchArena> POOL = new ArrayDeque<>();
+
+    static ScratchArena acquire() {
+        synchronized (POOL) {
+            ScratchArena arena = POOL.poll();
+            return arena != null ? arena : new ScratchArena();
+        }
+    }
+
+    static void release(ScratchArena arena) {
+        synchronized (POOL) {
+            POOL.push(arena);
+        }
+    }
+
+    private Frame[] frames = new Frame[0];
+
+    Frame frame(int depth) {
+        if (depth >= frames.length) {
+            int oldLength = frames.length;
+            frames = Arrays.copyOf(frames, Math.max(depth + 1, 2 * oldLength));
+            for (int d = oldLength; d < frames.length; d++)
+                frames[d] = new Frame();
+        }
+        return frames[depth];
+    }
+
+    static class Frame {
+
+        final float[] minusWeight = new float[52];
+
+        private float[] strategy = new float[0];
+        private float[] oppReachProbs = new float[0];
+        private float[] realizationProbs = new float[0];
+        private float[][] childCFValues = new float[0][0];
+        private float[] compressedStrategy = new float[0];
+        private float[][] compressedCFValues = new float[0][0];
+        private int[] oppEntries = new int[0];
+        private float[] oppEntryWeights = new float[0];
+
+        float[] strategy(int size) {
+            if (strategy.length < size)
+                strategy = new float[size];
+            return strategy;
+        }
+
+        float[] oppReachProbs(int size) {
+            if (oppReachProbs.length < size)
+                oppReachProbs = new float[size];
+            return oppReachProbs;
+        }
+
+        float[] realizationProbs(int size) {
+            if (realizationProbs.length < size)
+                realizationProbs = new float[size];
+            return realizationProbs;
+        }
+
+        float[][] childCFValues(int numChildren, int numHands) {
+            if (childCFValues.length < numChildren)
+                childCFValues = Arrays.copyOf(childCFValues, numChildren);
+
+            for (int child = 0; child < numChildren; child++) {
+                if (childCFValues[child] == null || childCFValues[child].length < numHands)
+                    childCFValues[child] = new float[numHands];
+            }
+            return childCFValues;
+        }
+
+        // strategy and values of the canonical hands of a node with a HandSymmetry
+        float[] compressedStrategy(int size) {
+            if (compressedStrategy.length < size)
+                compressedStrategy = new float[size];
+            return compressedStrategy;
+        }
+
+        float[][] compressedCFValues(int numRows, int numHands) {
+            if (compressedCFValues.length < numRows)
+                compressedCFValues = Arrays.copyOf(compressedCFValues, numRows);
+
+            for (int row = 0; row < numRows; row++) {
+                if (compressedCFValues[row] == null || compressedCFValues[row].length < numHands)
+                    compressedCFValues[row] = new float[numHands];
+            }
+            return compressedCFValues;
+        }
+
+        // the opponent entries of a showdown table that have weight, as entry indices and weights
+        int[] oppEntries(int size) {
+            if (oppEntries.length < size)
+                oppEntries = new int[size];
+            return oppEntries;
+        }
+
+        float[] oppEntryWeights(int size) {
+            if (oppEntryWeights.length < size)
+                oppEntryWeights = new float[size];
+            return oppEntryWeights;
+        }
+    }
+}
@@ -3,9 +3,8 @@ package poker.tree;
 import java.util.Arrays;
 
 import poker.SolverConfig;
-import poker.util.CardUtility;
 import poker.util.RangeManager;
-import poker.util.RiverCombo;
+import poker.util.ShowdownTable;
 
 public class ShowdownNode extends GameTreeNode {
 
@@ -22,13 +21,50 @@ public class ShowdownNode extends GameTreeNode {
         this.pot = pot;
     }
 
-    public float[] computeCFValuesRecursive(int plr, float[] oppReachProbs, int itr) {
+    @Override
+    void computeCFValues(int plr, float[] oppReachProbs, int itr, ScratchArena arena, int depth, float[] result) {
+        ScratchArena.Frame frame = arena.frame(depth);
+
+        computeShowdownCFValues(rangeManager, board, pot, plr, oppReachProbs, frame, result);
+
+        if (SolverConfig.STORE_EV)
+            storeExpectedValue(plr, oppReachProbs, result, frame);
+    }
+
+    @Override
+    void computeBestResponse(int plr, float[] oppReachProbs, ScratchArena arena, int depth, float[] result) {
+        computeShowdownCFValues(rangeManager, board, pot, plr, oppReachProbs, arena.frame(depth), result);
+    }
+
+    /*
+     * Hands win against the opponent hands of all lower rank groups of the board's
+     * showdown table and lose against the ones of all higher groups. Opponent
+     * weights are accumulated group by group, upwards for the wins and
+     * downwards for the losses. Deep in the tree most opponent hands have no
+     * weight, so the upward pass records the ones that have and the downward
+     * pass only visits those.
+     */
+    static void computeShowdownCFValues(RangeManager rangeManager, long board, int pot, int plr,
+            float[] oppReachProbs, ScratchArena.Frame frame, float[] plrCfV) {
 
         int plrNumHands = rangeManager.getNumHands(plr);
-        float[] plrCfV = new float[plrNumHands];
+        Arrays.fill(plrCfV, 0, plrNumHands, 0);
 
-        RiverCombo[] plrRiverCombos = rangeManager.getRiverCombos(board, plr);
-        RiverCombo[] oppRiverCombos = rangeManager.getRiverCombos(board, 1 - plr);
+        ShowdownTable table = rangeManager.getShowdownTable(board);
+        int numGroups = table.numGroups;
+
+        int[] plrHands = table.hands[plr];
+        byte[] plrCards = table.cards[plr];
+        int[] plrGroupStart = table.groupStart[plr];
+
+        int[] oppHands = table.hands[1 - plr];
+        byte[] oppCards = table.cards[1 - plr];
+        int[] oppGroupStart = table.groupStart[1 - plr];
+
+        float[] minusWeight = frame.minusWeight;
+        int[] oppEntries = frame.oppEntries(oppHands.length);
+        float[] oppEntryWeights = frame.oppEntryWeights(oppHands.length);
+        int numOppEntries = 0;
 
         float halfPot = 0.5F * pot;
         float winAmount = halfPot;
@@ -36,169 +72,130 @@ public class ShowdownNode extends GameTreeNode {
 
         float oppWeight = 0;
         float oppWeightSum = 0;
-        float[] minusWeight = new float[52];
+        Arrays.fill(minusWeight, 0);
 
         // counterfactual win probability
-        int j = 0;
-        for (int i = 0; i < plrRiverCombos.length; i++) {
-            RiverCombo plrCombo = plrRiverCombos[i];
-
-            if (CardUtility.overlapBoard(board, plrCombo.card1, plrCombo.card2))
-                continue;
+        for (int g = 0; g < numGroups; g++) {
+            for (int i = plrGroupStart[g]; i < plrGroupStart[g + 1]; i++) {
+                plrCfV[plrHands[i]] = (oppWeightSum
+                        - minusWeight[plrCards[2 * i]]
+                        - minusWeight[plrCards[2 * i + 1]])
+                        * winAmount;
+            }
 
-            while (j < oppRiverCombos.length && plrCombo.rank > oppRiverCombos[j].rank) {
-                RiverCombo oppCombo = oppRiverCombos[j];
-                oppWeight = oppReachProbs[oppCombo.reachProbIdx];
+            for (int j = oppGroupStart[g]; j < oppGroupStart[g + 1]; j++) {
+                oppWeight = oppReachProbs[oppHands[j]];
 
-                if (oppWeight != 0
-                        && !CardUtility.overlapBoard(board, oppCombo.card1, oppCombo.card2)) {
+                if (oppWeight != 0) {
                     oppWeightSum += oppWeight;
-                    minusWeight[oppCombo.card1] += oppWeight;
-                    minusWeight[oppCombo.card2] += oppWeight;
+                    minusWeight[oppCards[2 * j]] += oppWeight;
+                    minusWeight[oppCards[2 * j + 1]] += oppWeight;
+
+                    oppEntries[numOppEntries] = j;
+                    oppEntryWeights[numOppEntries++] = oppWeight;
                 }
-                j++;
             }
-
-            plrCfV[plrCombo.reachProbIdx] = (oppWeightSum
-                    - minusWeight[plrCombo.card1]
-                    - minusWeight[plrCombo.card2])
-                    * winAmount;
         }
 
+        // no opponent hand reaches the showdown, nothing is lost
+        if (numOppEntries == 0)
+            return;
+
         oppWeightSum = 0;
         Arrays.fill(minusWeight, 0);
 
         // counter factual lose probability
-        j = oppRiverCombos.length - 1;
-        for (int i = plrRiverCombos.length - 1; i >= 0; i--) {
-            RiverCombo plrCombo = plrRiverCombos[i];
-
-            if (CardUtility.overlapBoard(board, plrCombo.card1, plrCombo.card2))
-                continue;
-
-            while (j >= 0 && plrCombo.rank < oppRiverCombos[j].rank) {
-                RiverCombo oppCombo = oppRiverCombos[j];
-                oppWeight = oppReachProbs[oppCombo.reachProbIdx];
-
-                if (oppWeight != 0
-                        && !CardUtility.overlapBoard(board, oppCombo.card1, oppCombo.card2)) {
-                    oppWeightSum += oppWeight;
-                    minusWeight[oppCombo.card1] += oppWeight;
-                    minusWeight[oppCombo.card2] += oppWeight;
-                }
-                j--;
+        for (int g = numGroups - 1; g >= 0; g--) {
+            for (int i = plrGroupStart[g + 1] - 1; i >= plrGroupStart[g]; i--) {
+                plrCfV[plrHands[i]] -= (oppWeightSum
+                        - minusWeight[plrCards[2 * i]]
+                        - minusWeight[plrCards[2 * i + 1]])
+                        * loseAmount;
             }
 
-            plrCfV[plrCombo.reachProbIdx] -= (oppWeightSum
-                    - minusWeight[plrCombo.card1]
-                    - minusWeight[plrCombo.card2])
-                    * loseAmount;
-        }
+            // the recorded entries ascend, so the ones of the group are at the end
+            while (numOppEntries > 0 && oppEntries[numOppEntries - 1] >= oppGroupStart[g]) {
+                int j = oppEntries[--numOppEntries];
+                oppWeight = oppEntryWeights[numOppEntries];
 
-        if (SolverConfig.STORE_EV) {
-            float[] realizationProb = computeRealizationProbability(plr, oppReachProbs);
-            this.expectedValue = new float[plrCfV.length];
-
-            for (int i = 0; i < this.expectedValue.length; i++)
-                this.expectedValue[i] = plrCfV[i] / realizationProb[i];
+                oppWeightSum += oppWeight;
+                minusWeight[oppCards[2 * j]] += oppWeight;
+                minusWeight[oppCards[2 * j + 1]] += oppWeight;
+            }
         }
 
-        return plrCfV;
     }
 
     @Override
     public float[] computeEquityRecursive(int plr, float[] oppReachProbs) {
-        int plrNumHands = rangeManager.getNumHands(plr);
-
-        float[] plrEquity = new float[plrNumHands];
+        float[] plrEquity = new float[rangeManager.getNumHands(plr)];
+        computeShowdownEquity(rangeManager, board, plr, oppReachProbs, plrEquity);
 
-        RiverCombo[] plrRiverCombos = rangeManager.getRiverCombos(board, plr);
-        RiverCombo[] oppRiverCombos = rangeManager.getRiverCombos(board, 1 - plr);
-
-        float oppWeight = 0;
-        float oppWeightSum = 0;
-        float[] minusWeight = new float[52];
-
-        int tieRank = Integer.MAX_VALUE;
+        float[] realizationProb = computeRealizationProbability(plr, oppReachProbs);
+        this.equity = new float[plrEquity.length];
+        for (int i = 0; i < equity.length; i++)
+            this.equity[i] = plrEquity[i] / realizationProb[i];
 
-        float oppTieWeightSum = 0;
-        float[] minusTieWeight = new float[52];
+        return plrEquity;
+    }
 
-        float sameHandWeight[] = new float[52 * 51 / 2];
-        float tieSameHandWeight[] = new float[52 * 51 / 2];
+    // counterfactual win probability with ties counting half, plrEquity has to be zeroed
+    static void computeShowdownEquity(RangeManager rangeManager, long board, int plr, float[] oppReachProbs,
+            float[] plrEquity) {
 
-        // counterfactual win probability
-        int j = 0;
-        for (int i = 0; i < plrRiverCombos.length; i++) {
-            RiverCombo plrCombo = plrRiverCombos[i];
-            int plrCardPairIdx = CardUtility.cardPairToIndex(plrCombo.card1, plrCombo.card2);
+        ShowdownTable table = rangeManager.getShowdownTable(board);
+        int[] plrHandsCrossRefTable = rangeManager.getHandsCrossRefTable(plr);
 
-            if (CardUtility.overlapBoard(board, plrCombo.card1, plrCombo.card2))
-                continue;
+        int[] plrHands = table.hands[plr];
+        byte[] plrCards = table.cards[plr];
+        int[] plrGroupStart = table.groupStart[plr];
 
-            if (plrCombo.rank > tieRank) {
-                oppWeightSum += oppTieWeightSum;
-                oppTieWeightSum = 0;
+        int[] oppHands = table.hands[1 - plr];
+        byte[] oppCards = table.cards[1 - plr];
+        int[] oppGroupStart = table.groupStart[1 - plr];
 
-                for (int k = 0; k < minusWeight.length; k++) {
-                    minusWeight[k] += minusTieWeight[k];
-                    minusTieWeight[k] = 0;
-                }
+        float oppWeight = 0;
+        float oppWeightSum = 0;
+        float[] minusWeight = new float[52];
 
-                for (int k = 0; k < sameHandWeight.length; k++) {
-                    sameHandWeight[k] = tieSameHandWeight[k];
-                    tieSameHandWeight[k] = 0;
-                }
+        float oppTieWeightSum;
+        float[] minusTieWeight = new float[52];
 
-                tieRank = Integer.MAX_VALUE;
+        for (int g = 0; g < table.numGroups; g++) {
+            oppTieWeightSum = 0;
+            for (int j = oppGroupStart[g]; j < oppGroupStart[g + 1]; j++) {
+                oppWeight = oppReachProbs[oppHands[j]];
+                oppTieWeightSum += oppWeight;
+                minusTieWeight[oppCards[2 * j]] += oppWeight;
+                minusTieWeight[oppCards[2 * j + 1]] += oppWeight;
             }
 
-            while (j < oppRiverCombos.length && plrCombo.rank > oppRiverCombos[j].rank) {
-                RiverCombo oppCombo = oppRiverCombos[j];
-                oppWeight = oppReachProbs[oppCombo.reachProbIdx];
-
-                if (oppWeight != 0
-                        && !CardUtility.overlapBoard(board, oppCombo.card1, oppCombo.card2)) {
-
-                    oppWeightSum += oppWeight;
-                    minusWeight[oppCombo.card1] += oppWeight;
-                    minusWeight[oppCombo.card2] += oppWeight;
-                    sameHandWeight[CardUtility.cardPairToIndex(oppCombo.card1, oppCombo.card2)] = oppWeight;
-                }
-                j++;
+            for (int i = plrGroupStart[g]; i < plrGroupStart[g + 1]; i++) {
+                int h = plrHands[i];
+                byte card1 = plrCards[2 * i];
+                byte card2 = plrCards[2 * i + 1];
+
+                // the opponent's hand with the same cards ties and is subtracted twice
+                float sameHandOppWeight = 0;
+                if (plrHandsCrossRefTable[h] >= 0)
+                    sameHandOppWeight = oppReachProbs[plrHandsCrossRefTable[h]];
+
+                plrEquity[h] = (oppWeightSum
+                        - minusWeight[card1]
+                        - minusWeight[card2])
+                        + 0.5F * (oppTieWeightSum
+                                - minusTieWeight[card1]
+                                - minusTieWeight[card2]
+                                + sameHandOppWeight);
             }
 
-            while (j < oppRiverCombos.length && plrCombo.rank == oppRiverCombos[j].rank) {
-                RiverCombo oppCombo = oppRiverCombos[j];
-                oppWeight = oppReachProbs[oppCombo.reachProbIdx];
-
-                if (oppWeight != 0
-                        && !CardUtility.overlapBoard(board, oppCombo.card1, oppCombo.card2)) {
-
-                    tieRank = oppCombo.rank;
-                    oppTieWeightSum += oppWeight;
-                    minusTieWeight[oppCombo.card1] += oppWeight;
-                    minusTieWeight[oppCombo.card2] += oppWeight;
-                    tieSameHandWeight[CardUtility.cardPairToIndex(oppCombo.card1, oppCombo.card2)] = oppWeight;
+            oppWeightSum += oppTieWeightSum;
+            for (int j = oppGroupStart[g]; j < oppGroupStart[g + 1]; j++) {
+                for (int c = 2 * j; c < 2 * j + 2; c++) {
+                    minusWeight[oppCards[c]] += minusTieWeight[oppCards[c]];
+                    minusTieWeight[oppCards[c]] = 0;
                 }
-                j++;
             }
-
-            plrEquity[plrCombo.reachProbIdx] = (oppWeightSum
-                    - minusWeight[plrCombo.card1]
-                    - minusWeight[plrCombo.card2]
-                    + sameHandWeight[plrCardPairIdx])
-                    + 0.5F * (oppTieWeightSum
-                            - minusTieWeight[plrCombo.card1]
-                            - minusTieWeight[plrCombo.card2]
-                            + tieSameHandWeight[plrCardPairIdx]);
         }
-
-        float[] realizationProb = computeRealizationProbability(plr, oppReachProbs);
-        this.equity = new float[plrEquity.length];
-        for (int i = 0; i < equity.length; i++)
-            this.equity[i] = plrEquity[i] / realizationProb[i];
-
-        return plrEquity;
     }
-}
\ No newline at end of file
+}
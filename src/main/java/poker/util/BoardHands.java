@@ -0,0 +1,89 @@
+package poker.util;
+
+import java.util.Arrays;
+
+/*
+ * Hands of both players that do not overlap a board, as ascending hand indices
+ * with their cards and the index of the opponent's hand with the same cards
+ * (-1 if there is none). Loops over them replace the board check per hand of
+ * fold payoffs and realization weights. Shared by all nodes of the board.
+ */
+public class BoardHands {
+
+    public final long board;
+
+    public final int[] numHands = new int[2];
+
+    public final int[][] hands = new int[2][];
+    public final byte[][] cards = new byte[2][];
+    public final int[][] sameHand = new int[2][];
+
+    BoardHands(long board, RangeManager rangeManager) {
+        this.board = board;
+
+        for (int plr = 0; plr < 2; plr++) {
+            byte[] rangeHands = rangeManager.getHands(plr);
+            int[] crossRefTable = rangeManager.getHandsCrossRefTable(plr);
+            numHands[plr] = rangeManager.getNumHands(plr);
+
+            int[] plrHands = new int[numHands[plr]];
+            int numValid = 0;
+            for (int h = 0; h < numHands[plr]; h++) {
+                if (!CardUtility.overlapBoard(board, rangeHands[2 * h], rangeHands[2 * h + 1]))
+                    plrHands[numValid++] = h;
+            }
+
+            hands[plr] = Arrays.copyOf(plrHands, numValid);
+            cards[plr] = new byte[2 * numValid];
+            sameHand[plr] = new int[numValid];
+
+            for (int i = 0; i < numValid; i++) {
+                int h = hands[plr][i];
+                cards[plr][2 * i] = rangeHands[2 * h];
+                cards[plr][2 * i + 1] = rangeHands[2 * h + 1];
+                sameHand[plr][i] = crossRefTable[h];
+            }
+        }
+    }
+
+    /*
+     * Weight of the opponent hands that do not share a card with each hand of
+     * plr: all weights minus the ones containing either card, plus the hand with
+     * both cards that was subtracted twice. Hands overlapping the board get 0.
+     * Opponent hands without weight are skipped, deep in the tree most are.
+     */
+    public void computeRealizationWeights(int plr, float[] oppWeights, float[] minusWeight, float[] result) {
+        int[] oppHands = hands[1 - plr];
+        byte[] oppCards = cards[1 - plr];
+
+        Arrays.fill(result, 0, numHands[plr], 0);
+        Arrays.fill(minusWeight, 0);
+
+        float oppWeightSum = 0;
+        for (int j = 0; j < oppHands.length; j++) {
+            float oppWeight = oppWeights[oppHands[j]];
+            if (oppWeight == 0)
+                continue;
+
+            minusWeight[oppCards[2 * j]] += oppWeight;
+            minusWeight[oppCards[2 * j + 1]] += oppWeight;
+            oppWeightSum += oppWeight;
+        }
+
+        if (oppWeightSum == 0)
+            return;
+
+        int[] plrHands = hands[plr];
+        byte[] plrCards = cards[plr];
+        int[] plrSameHand = sameHand[plr];
+
+        for (int i = 0; i < plrHands.length; i++) {
+            float sameHandOppWeight = plrSameHand[i] >= 0 ? oppWeights[plrSameHand[i]] : 0;
+
+            result[plrHands[i]] = oppWeightSum
+                    - minusWeight[plrCards[2 * i]]
+                    - minusWeight[plrCards[2 * i + 1]]
+                    + sameHandOppWeight;
+        }
+    }
+}
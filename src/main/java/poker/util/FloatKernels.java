@@ -0,0 +1,181 @@
+package poker.util;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+import poker.SolverConfig;
+
+/*
+ * Float stream loops of the traversal. They use the Vector API when
+ * SolverConfig.VECTORIZED is set and the jdk.incubator.vector module is
+ * available, the scalar loops otherwise. Both compute the same values: products
+ * and sums are never fused.
+ */
+public class FloatKernels {
+
+    private static final boolean VECTORIZED = SolverConfig.VECTORIZED
+            && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    public static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    // dst[i] = src[i] * weights[weightsOffset + i]
+    public static void multiply(float[] src, float[] weights, int weightsOffset, float[] dst, int length) {
+        if (VECTORIZED) {
+            Vectorized.multiply(src, weights, weightsOffset, dst, length);
+            return;
+        }
+
+        for (int i = 0; i < length; i++)
+            dst[i] = src[i] * weights[weightsOffset + i];
+    }
+
+    // dst[i] += src[i]
+    public static void accumulate(float[] dst, float[] src, int length) {
+        if (VECTORIZED) {
+            Vectorized.accumulate(dst, src, length);
+            return;
+        }
+
+        for (int i = 0; i < length; i++)
+            dst[i] += src[i];
+    }
+
+    // dst[i] += weights[weightsOffset + i] * src[i]
+    public static void accumulateProduct(float[] dst, float[] weights, int weightsOffset, float[] src,
+            int length) {
+        if (VECTORIZED) {
+            Vectorized.accumulateProduct(dst, weights, weightsOffset, src, length);
+            return;
+        }
+
+        for (int i = 0; i < length; i++)
+            dst[i] += weights[weightsOffset + i] * src[i];
+    }
+
+    // dst[i] += scale * src[srcOffset + i]
+    public static void accumulateScaled(float[] dst, float[] src, int srcOffset, float scale, int length) {
+        if (VECTORIZED) {
+            Vectorized.accumulateScaled(dst, src, srcOffset, scale, length);
+            return;
+        }
+
+        for (int i = 0; i < length; i++)
+            dst[i] += scale * src[srcOffset + i];
+    }
+
+    // dst[i] += scale * src[srcOffset + i], for counts stored as shorts
+    public static void accumulateScaled(float[] dst, short[] src, int srcOffset, float scale, int length) {
+        if (VECTORIZED) {
+            Vectorized.accumulateScaled(dst, src, srcOffset, scale, length);
+            return;
+        }
+
+        for (int i = 0; i < length; i++)
+            dst[i] += scale * src[srcOffset + i];
+    }
+
+    // dst[i] += src[permutation[i]], src is only read
+    public static void accumulatePermuted(float[] dst, float[] src, int[] permutation, int length) {
+        if (VECTORIZED) {
+            Vectorized.accumulatePermuted(dst, src, permutation, length);
+            return;
+        }
+
+        for (int i = 0; i < length; i++)
+            dst[i] += src[permutation[i]];
+    }
+
+    // true if src is zero at all the given indices, reachable ranges exit at the first ones
+    public static boolean isZero(float[] src, int[] indices) {
+        for (int i : indices) {
+            if (src[i] != 0)
+                return false;
+        }
+        return true;
+    }
+
+    // only loaded if the vector module is available
+    private static class Vectorized {
+
+        static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+        // as many lanes as SPECIES, so a conversion fills one float vector
+        static final VectorSpecies<Short> SHORT_SPECIES = VectorSpecies.of(short.class,
+                VectorShape.forBitSize(SPECIES.vectorBitSize() / 2));
+
+        static void multiply(float[] src, float[] weights, int weightsOffset, float[] dst, int length) {
+            int i = 0;
+            for (; i < SPECIES.loopBound(length); i += SPECIES.length()) {
+                FloatVector.fromArray(SPECIES, src, i)
+                        .mul(FloatVector.fromArray(SPECIES, weights, weightsOffset + i))
+                        .intoArray(dst, i);
+            }
+
+            for (; i < length; i++)
+                dst[i] = src[i] * weights[weightsOffset + i];
+        }
+
+        static void accumulate(float[] dst, float[] src, int length) {
+            int i = 0;
+            for (; i < SPECIES.loopBound(length); i += SPECIES.length()) {
+                FloatVector.fromArray(SPECIES, dst, i)
+                        .add(FloatVector.fromArray(SPECIES, src, i))
+                        .intoArray(dst, i);
+            }
+
+            for (; i < length; i++)
+                dst[i] += src[i];
+        }
+
+        static void accumulateProduct(float[] dst, float[] weights, int weightsOffset, float[] src, int length) {
+            int i = 0;
+            for (; i < SPECIES.loopBound(length); i += SPECIES.length()) {
+                FloatVector product = FloatVector.fromArray(SPECIES, weights, weightsOffset + i)
+                        .mul(FloatVector.fromArray(SPECIES, src, i));
+                FloatVector.fromArray(SPECIES, dst, i).add(product).intoArray(dst, i);
+            }
+
+            for (; i < length; i++)
+                dst[i] += weights[weightsOffset + i] * src[i];
+        }
+
+        static void accumulateScaled(float[] dst, float[] src, int srcOffset, float scale, int length) {
+            int i = 0;
+            for (; i < SPECIES.loopBound(length); i += SPECIES.length()) {
+                FloatVector product = FloatVector.fromArray(SPECIES, src, srcOffset + i).mul(scale);
+                FloatVector.fromArray(SPECIES, dst, i).add(product).intoArray(dst, i);
+            }
+
+            for (; i < length; i++)
+                dst[i] += scale * src[srcOffset + i];
+        }
+
+        static void accumulateScaled(float[] dst, short[] src, int srcOffset, float scale, int length) {
+            int i = 0;
+            for (; i < SPECIES.loopBound(length); i += SPECIES.length()) {
+                FloatVector product = ((FloatVector) ShortVector.fromArray(SHORT_SPECIES, src, srcOffset + i)
+                        .convertShape(VectorOperators.S2F, SPECIES, 0)).mul(scale);
+                FloatVector.fromArray(SPECIES, dst, i).add(product).intoArray(dst, i);
+            }
+
+            for (; i < length; i++)
+                dst[i] += scale * src[srcOffset + i];
+        }
+
+        static void accumulatePermuted(float[] dst, float[] src, int[] permutation, int length) {
+            int i = 0;
+            for (; i < SPECIES.loopBound(length); i += SPECIES.length()) {
+                FloatVector.fromArray(SPECIES, dst, i)
+                        .add(FloatVector.fromArray(SPECIES, src, 0, permutation, i))
+                        .intoArray(dst, i);
+            }
+
+            for (; i < length; i++)
+                dst[i] += src[permutation[i]];
+        }
+    }
+}
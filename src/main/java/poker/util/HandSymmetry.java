@@ -0,0 +1,95 @@
+package poker.util;
+
+import java.util.Arrays;
+
+/*
+ * Hands of a player that are images of each other under the suit swaps a node
+ * is symmetric in. They play the same strategy, so trainables only store the
+ * canonical hand of each orbit, the one with the lowest index. Hands that
+ * overlap the node's board are dropped, they are never played there. Rows of
+ * numCanonical values are expanded to numHands values and back.
+ */
+public class HandSymmetry {
+
+    public final int numHands;
+    public final int numCanonical;
+
+    // per hand the index of its orbit among the canonical hands, -1 if the hand overlaps the board
+    public final int[] canonical;
+
+    // per canonical hand the hand index of its representative
+    public final int[] representatives;
+
+    /*
+     * Orbits of the hands under the swaps of suits of the same class. Suits are
+     * in one class with the lowest suit of the class, the swaps of a class
+     * generate all its suit permutations. They keep the board, so they map
+     * hands overlapping it onto each other.
+     */
+    HandSymmetry(RangeManager rangeManager, int plr, long board, byte[] suitClasses) {
+        numHands = rangeManager.getNumHands(plr);
+        byte[] hands = rangeManager.getHands(plr);
+
+        int[] root = new int[numHands];
+        for (int h = 0; h < numHands; h++)
+            root[h] = h;
+
+        for (byte suit1 = 1; suit1 < 4; suit1++) {
+            for (byte suit2 = 0; suit2 < suit1; suit2++) {
+                if (suitClasses[suit1] != suitClasses[suit2])
+                    continue;
+
+                int[] permutation = rangeManager.getSuitPermutation(plr, suit1, suit2);
+                for (int h = 0; h < numHands; h++) {
+                    int root1 = find(root, h);
+                    int root2 = find(root, permutation[h]);
+                    root[Math.max(root1, root2)] = Math.min(root1, root2);
+                }
+            }
+        }
+
+        canonical = new int[numHands];
+        int[] representatives = new int[numHands];
+        int numCanonical = 0;
+        for (int h = 0; h < numHands; h++) {
+            int r = find(root, h);
+            if (CardUtility.overlapBoard(board, hands[2 * h], hands[2 * h + 1])) {
+                canonical[h] = -1;
+            } else if (r == h) {
+                representatives[numCanonical] = h;
+                canonical[h] = numCanonical++;
+            } else {
+                canonical[h] = canonical[r];
+            }
+        }
+
+        this.numCanonical = numCanonical;
+        this.representatives = Arrays.copyOf(representatives, numCanonical);
+    }
+
+    private static int find(int[] root, int h) {
+        while (root[h] != h)
+            h = root[h] = root[root[h]];
+        return h;
+    }
+
+    public boolean isTrivial() {
+        return numCanonical == numHands;
+    }
+
+    // full[r * numHands + h] = compressed[offset + r * numCanonical + canonical[h]] for numRows rows,
+    // uniform for hands overlapping the board, like an untrained trainable
+    public void expand(float[] compressed, int offset, int numRows, float[] full) {
+        for (int r = 0; r < numRows; r++) {
+            int rowOffset = offset + r * numCanonical;
+            for (int h = 0; h < numHands; h++)
+                full[r * numHands + h] = canonical[h] >= 0 ? compressed[rowOffset + canonical[h]] : 1F / numRows;
+        }
+    }
+
+    // compressed[c] = full[representatives[c]]
+    public void compress(float[] full, float[] compressed) {
+        for (int c = 0; c < numCanonical; c++)
+            compressed[c] = full[representatives[c]];
+    }
+}
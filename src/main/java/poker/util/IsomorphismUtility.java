@@ -12,7 +12,8 @@ public class IsomorphismUtility {
         public boolean[] suits;
         public byte[] cards;
         public int[] references;
-        public long[][][] swaps;
+        // per isomorphic suit and player, the gather permutation of the hands to the suit it mirrors
+        public int[][][] permutations;
     }
 
     public static IsomorphismData getTurnIsomorphismData(RangeManager rangeManager, long flop) {
@@ -32,13 +33,11 @@ public class IsomorphismUtility {
 
         List<Byte> cards = new ArrayList<Byte>();
         List<Integer> references = new ArrayList<Integer>();
-        long[][][] swaps = new long[4][2][];
+        int[][][] permutations = new int[4][2][];
 
         byte[] isomorphicSuit = new byte[4];
         Arrays.fill(isomorphicSuit, Byte.MIN_VALUE);
 
-        int[] reverseTableTurn = new int[52 * 51 / 2];
-
         for (byte suit1 = 1; suit1 < 4; suit1++) {
             for (byte suit2 = 0; suit2 < suit1; suit2++) {
                 if (rangeSuitIsomorphism[suit1] == rangeSuitIsomorphism[suit2]
@@ -46,7 +45,7 @@ public class IsomorphismUtility {
 
                     data.suits[suit1] = true;
                     isomorphicSuit[suit1] = suit2;
-                    fillSwapList(rangeManager, swaps, reverseTableTurn, suit1, suit2);
+                    fillPermutations(rangeManager, permutations, suit1, suit2);
                     break;
                 }
             }
@@ -56,7 +55,7 @@ public class IsomorphismUtility {
 
         data.cards = Bytes.toArray(cards);
         data.references = references.stream().mapToInt(i -> i).toArray();
-        data.swaps = swaps;
+        data.permutations = permutations;
 
         return data;
     }
@@ -82,13 +81,11 @@ public class IsomorphismUtility {
 
         List<Byte> cards = new ArrayList<Byte>();
         List<Integer> references = new ArrayList<Integer>();
-        long[][][] swaps = new long[4][2][];
+        int[][][] permutations = new int[4][2][];
 
         byte[] isomorphicSuit = new byte[4];
         Arrays.fill(isomorphicSuit, Byte.MIN_VALUE);
 
-        int[] reverseTableTurn = new int[52 * 51 / 2];
-
         for (byte suit1 = 1; suit1 < 4; suit1++) {
             for (byte suit2 = 0; suit2 < suit1; suit2++) {
                 if (rangeSuitIsomorphism[suit1] == rangeSuitIsomorphism[suit2]
@@ -96,7 +93,7 @@ public class IsomorphismUtility {
                         && turnRankSet[suit1] == turnRankSet[suit2]) {
                     data.suits[suit1] = true;
                     isomorphicSuit[suit1] = suit2;
-                    fillSwapList(rangeManager, swaps, reverseTableTurn, suit1, suit2);
+                    fillPermutations(rangeManager, permutations, suit1, suit2);
                     break;
                 }
             }
@@ -106,35 +103,61 @@ public class IsomorphismUtility {
 
         data.cards = Bytes.toArray(cards);
         data.references = references.stream().mapToInt(i -> i).toArray();
-        data.swaps = swaps;
+        data.permutations = permutations;
 
         return data;
     }
 
-    public static void fillSwapList(RangeManager rangeManager, long[][][] swapList, int[] reverseTable,
-            byte suit1, byte suit2) {
-
-        for (int plr = 0; plr < 2; plr++) {
-            Arrays.fill(reverseTable, Byte.MAX_VALUE);
-            List<Long> plrSwapList = new ArrayList<>();
+    /*
+     * Class of each suit, the lowest suit of its class. Suits are in a class if
+     * both ranges are isomorphic in them and they hold the same ranks on every
+     * board of the path, so the game up to and after the boards is symmetric in
+     * them.
+     */
+    public static byte[] getSuitClasses(RangeManager rangeManager, long... boards) {
+        byte[] rangeSuitIsomorphism = rangeManager.getRangeSuitIsomorphism(rangeManager);
+        long mask = 0x1111111111111L;
 
-            int plrNumHands = rangeManager.getNumHands(plr);
-            byte[] plrHands = rangeManager.getHands(plr);
-            for (int h = 0; h < plrNumHands; h++) {
-                reverseTable[CardUtility.cardPairToIndex(plrHands[2 * h], plrHands[2 * h + 1])] = h;
-            }
+        byte[] suitClasses = new byte[4];
+        outer: for (byte suit1 = 0; suit1 < 4; suit1++) {
+            suitClasses[suit1] = suit1;
+            for (byte suit2 = 0; suit2 < suit1; suit2++) {
+                if (rangeSuitIsomorphism[suit1] != rangeSuitIsomorphism[suit2])
+                    continue;
 
-            for (int idx = 0; idx < plrNumHands; idx++) {
-                byte card1 = CardUtility.swapSuits(plrHands[2 * idx], suit1, suit2);
-                byte card2 = CardUtility.swapSuits(plrHands[2 * idx + 1], suit1, suit2);
-                int mappedIdx = reverseTable[CardUtility.cardPairToIndex(card1, card2)];
+                boolean sameRanks = true;
+                for (long board : boards)
+                    sameRanks &= (board >>> suit1 & mask) == (board >>> suit2 & mask);
 
-                if (idx < mappedIdx) {
-                    plrSwapList.add(((long) idx << 32) | mappedIdx);
+                if (sameRanks) {
+                    suitClasses[suit1] = suitClasses[suit2];
+                    continue outer;
                 }
             }
-            swapList[suit1][plr] = plrSwapList.stream().mapToLong(l -> l).toArray();
         }
+        return suitClasses;
+    }
+
+    // the permutations are shared by all chance nodes, they are never written
+    public static void fillPermutations(RangeManager rangeManager, int[][][] permutations, byte suit1, byte suit2) {
+        for (int plr = 0; plr < 2; plr++)
+            permutations[suit1][plr] = rangeManager.getSuitPermutation(plr, suit1, suit2);
+    }
+
+    // hand index of each hand with suit1 and suit2 swapped, -1 if the swapped hand is not in the range
+    static int[] computeSuitPermutation(byte[] hands, int numHands, byte suit1, byte suit2) {
+        int[] reverseTable = new int[52 * 51 / 2];
+        Arrays.fill(reverseTable, -1);
+        for (int h = 0; h < numHands; h++)
+            reverseTable[CardUtility.cardPairToIndex(hands[2 * h], hands[2 * h + 1])] = h;
+
+        int[] permutation = new int[numHands];
+        for (int h = 0; h < numHands; h++) {
+            byte card1 = CardUtility.swapSuits(hands[2 * h], suit1, suit2);
+            byte card2 = CardUtility.swapSuits(hands[2 * h + 1], suit1, suit2);
+            permutation[h] = reverseTable[CardUtility.cardPairToIndex(card1, card2)];
+        }
+        return permutation;
     }
 
     public static void fillRefList(List<Integer> refList, List<Byte> cardList, long board, byte[] isomorphicSuit) {
@@ -161,15 +184,4 @@ public class IsomorphismUtility {
         }
     }
 
-    public static void applySwap(float[] arr, long[] swaps) {
-        for (long swap : swaps) {
-            int idx1 = (int) swap;
-            int idx2 = (int) (swap >>> 32);
-
-            float tmp = arr[idx1];
-            arr[idx1] = arr[idx2];
-            arr[idx2] = tmp;
-        }
-    }
-
 }
@@ -38,7 +38,9 @@ public class PokerUtil {
      * @param secondCard
      * @param board
      * @return
+     * @deprecated only the highest kicker counts, use BitboardEvaluator
      */
+    @Deprecated
     public static int getHandValue(byte firstCard, byte secondCard, long board) {
         byte[] boardArr = CardUtility.boardLongToArr(board);
         int[] cards = { firstCard, secondCard, boardArr[0], boardArr[1], boardArr[2], boardArr[3], boardArr[4] };
@@ -1,9 +1,11 @@
 package poker.util;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import poker.SolverConfig;
 
 public class RangeManager {
 
@@ -16,7 +18,19 @@ public class RangeManager {
     int[] oopHandsCrossRefTable;
     int[] ipHandsCrossRefTable;
 
-    private final Map<Long, RiverCombo[]> riverComboBuffer = new HashMap<>();
+    // id of the hands of both ranges in the showdown table cache
+    private final int rangesId;
+
+    private final Map<Long, BoardHands> boardHands = new ConcurrentHashMap<>();
+    private final Map<Long, RunoutEquity> runoutEquities = new ConcurrentHashMap<>();
+    private final AtomicLong runoutEquityBytes = new AtomicLong();
+
+    // per player and pair of suits (4 * suit1 + suit2, suit1 > suit2), see IsomorphismUtility.computeSuitPermutation
+    private final int[][][] suitPermutations = new int[2][16][];
+
+    // per player, board and suit classes (2 bits per suit above the board's 52)
+    private final List<Map<Long, HandSymmetry>> handSymmetries = List.of(new ConcurrentHashMap<>(),
+            new ConcurrentHashMap<>());
 
     public RangeManager(String oopPreflopRangeStr, String ipPreflopRangeStr) {
 
@@ -25,6 +39,11 @@ public class RangeManager {
 
         initHandsCrossRefTable(0);
         initHandsCrossRefTable(1);
+
+        initSuitPermutations(0);
+        initSuitPermutations(1);
+
+        rangesId = ShowdownTableCache.getInstance().getRangesId(oopHands, ipHands);
     }
 
     private void initPreflopRange(String rangeStr, int plr) {
@@ -146,10 +165,27 @@ public class RangeManager {
         return (plr == 0) ? oopInitialWeights : ipInitialWeights;
     }
 
+    /*
+     * True if swapping suit1 and suit2 maps every hand of plr to a hand of the
+     * range with the same initial weight. The solve then stays symmetric in the
+     * two suits, so deals of one can be mirrored from the other.
+     */
     public boolean isSuitIsomorphic(int plr, byte suit1, byte suit2) {
+        if (suit1 == suit2)
+            return true;
+
+        int[] permutation = getSuitPermutation(plr, (byte) Math.max(suit1, suit2), (byte) Math.min(suit1, suit2));
+        float[] weights = getInitialWeights(plr);
+
+        for (int h = 0; h < permutation.length; h++) {
+            if (permutation[h] < 0 || weights[permutation[h]] != weights[h])
+                return false;
+        }
         return true;
     }
 
+    // class of each suit, suits of a class are isomorphic in both ranges. Computed on first use,
+    // the initial weights must not change afterwards
     private byte[] rangeSuitIsomorphism;
 
     public byte[] getRangeSuitIsomorphism(RangeManager rangeManager) {
@@ -172,35 +208,49 @@ public class RangeManager {
         return this.rangeSuitIsomorphism = rangeSuitIsomorphism;
     }
 
-    public RiverCombo[] getRiverCombos(long board, int plr) {
-
-        // check whether combo is already in buffer
-        long key = (board << 1) | plr;
-        if (riverComboBuffer.containsKey(key))
-            return riverComboBuffer.get(key);
-
-        byte[] hands = plr == 0 ? oopHands : ipHands;
-        float[] handWeights = plr == 0 ? oopInitialWeights : ipInitialWeights;
-
-        ArrayList<RiverCombo> riverCombos = new ArrayList<>();
+    // accessed concurrently by parallel traversals
+    public ShowdownTable getShowdownTable(long board) {
+        return ShowdownTableCache.getInstance().get(board, rangesId, oopHands, ipHands);
+    }
 
-        for (int h = 0; h < handWeights.length; h++) {
-            byte card1 = hands[2 * h];
-            byte card2 = hands[2 * h + 1];
+    // looked up once per node, the nodes keep the reference
+    public BoardHands getBoardHands(long board) {
+        return boardHands.computeIfAbsent(board, b -> new BoardHands(b, this));
+    }
 
-            if (CardUtility.overlapBoard(board, card1, card2))
-                continue;
+    /*
+     * Built by the first all-in node of the board that uses it. Null if it would
+     * take the runout equities of the ranges over SolverConfig.RUNOUT_EQUITY_BYTES,
+     * the node sums the runouts then.
+     */
+    public RunoutEquity getRunoutEquity(long board) {
+        return runoutEquities.computeIfAbsent(board, b -> {
+            long bytes = RunoutEquity.getByteSize(getBoardHands(b));
+            if (runoutEquityBytes.addAndGet(bytes) > SolverConfig.RUNOUT_EQUITY_BYTES) {
+                runoutEquityBytes.addAndGet(-bytes);
+                return null;
+            }
+            return new RunoutEquity(b, this);
+        });
+    }
 
-            int value = PokerUtil.getHandValue(card1, card2, board);
-            RiverCombo riverCombo = new RiverCombo(card1, card2, h, value);
-            riverCombos.add(riverCombo);
+    private void initSuitPermutations(int plr) {
+        for (byte suit1 = 1; suit1 < 4; suit1++) {
+            for (byte suit2 = 0; suit2 < suit1; suit2++)
+                suitPermutations[plr][4 * suit1 + suit2] = IsomorphismUtility.computeSuitPermutation(getHands(plr),
+                        getNumHands(plr), suit1, suit2);
         }
+    }
 
-        Collections.sort(riverCombos);
+    public int[] getSuitPermutation(int plr, byte suit1, byte suit2) {
+        return suitPermutations[plr][4 * suit1 + suit2];
+    }
 
-        RiverCombo[] riverComboArr = new RiverCombo[riverCombos.size()];
-        riverComboBuffer.put(key, riverCombos.toArray(riverComboArr));
-        return riverComboArr;
+    // the compacted hands of plr on a board, see IsomorphismUtility.getSuitClasses
+    public HandSymmetry getHandSymmetry(int plr, long board, byte[] suitClasses) {
+        long key = board | (long) (suitClasses[0] | suitClasses[1] << 2 | suitClasses[2] << 4 | suitClasses[3] << 6)
+                << 52;
+        return handSymmetries.get(plr).computeIfAbsent(key, k -> new HandSymmetry(this, plr, board, suitClasses));
     }
 
     public void initHandsCrossRefTable(int plr) {
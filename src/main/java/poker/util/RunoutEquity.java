@@ -0,0 +1,131 @@
+package poker.util;
+
+import java.util.Arrays;
+
+import poker.evaluation.BitboardEvaluator;
+
+/*
+ * Showdown results of all pairs of hands over the runouts of a flop or turn
+ * board: the number of river boards a hand wins on minus the ones it loses on,
+ * against each opponent hand. Runouts that overlap either hand and hands that
+ * share a card count nothing. Runouts are ordered like chance nodes deal them,
+ * so a flop runout counts for both orders of its turn and river card.
+ *
+ * The counterfactual values of an all-in node are then a single pass over the
+ * opponent weights instead of a showdown per runout. Shared by all all-in
+ * nodes of the board.
+ *
+ * Only live hands of the board get a row or column, and the counts fit a
+ * short: a flop runout counts twice, 2 * C(45, 2) at most.
+ */
+public class RunoutEquity {
+
+    public final long board;
+
+    BoardHands boardHands;
+
+    // per player, a row of the player's live hands per live opponent hand of the board
+    final short[][] results = new short[2][];
+
+    // of a single runout, every street deals one of the cards not on the board or in the two hands
+    final float runoutProbability;
+
+    RunoutEquity(long board, RangeManager rangeManager) {
+        this.board = board;
+        this.boardHands = rangeManager.getBoardHands(board);
+
+        for (int plr = 0; plr < 2; plr++)
+            results[plr] = new short[boardHands.hands[1 - plr].length * boardHands.hands[plr].length];
+
+        int numCards = 52 - Long.bitCount(board);
+        int numStreets = 5 - Long.bitCount(board);
+
+        float probability = 1;
+        for (int street = 0; street < numStreets; street++)
+            probability /= numCards - street - 4;
+        this.runoutProbability = probability;
+
+        int[][] values = { new int[boardHands.hands[0].length], new int[boardHands.hands[1].length] };
+
+        for (byte card1 = 0; card1 < 52; card1++) {
+            if (CardUtility.overlapBoard(board, card1))
+                continue;
+
+            if (numStreets == 1) {
+                addRunout(board | 1L << card1, 1, values);
+                continue;
+            }
+
+            for (byte card2 = (byte) (card1 + 1); card2 < 52; card2++) {
+                if (!CardUtility.overlapBoard(board, card2))
+                    addRunout(board | 1L << card1 | 1L << card2, 2, values);
+            }
+        }
+    }
+
+    private void addRunout(long river, int count, int[][] values) {
+        for (int plr = 0; plr < 2; plr++) {
+            byte[] cards = boardHands.cards[plr];
+
+            // hands the runout overlaps do not take part
+            for (int i = 0; i < values[plr].length; i++) {
+                if (CardUtility.overlapBoard(river, cards[2 * i], cards[2 * i + 1]))
+                    values[plr][i] = -1;
+                else
+                    values[plr][i] = BitboardEvaluator.getHandValue(cards[2 * i], cards[2 * i + 1], river);
+            }
+        }
+
+        byte[] oopCards = boardHands.cards[0];
+        byte[] ipCards = boardHands.cards[1];
+        int oopNumHands = boardHands.hands[0].length;
+        int ipNumHands = boardHands.hands[1].length;
+
+        for (int j = 0; j < ipNumHands; j++) {
+            if (values[1][j] < 0)
+                continue;
+
+            long ipMask = 1L << ipCards[2 * j] | 1L << ipCards[2 * j + 1];
+
+            for (int i = 0; i < oopNumHands; i++) {
+                if (values[0][i] < 0 || CardUtility.overlapBoard(ipMask, oopCards[2 * i], oopCards[2 * i + 1]))
+                    continue;
+
+                int result = Integer.compare(values[0][i], values[1][j]) * count;
+                results[0][j * oopNumHands + i] += result;
+                results[1][i * ipNumHands + j] -= result;
+            }
+        }
+    }
+
+    public static long getByteSize(BoardHands boardHands) {
+        return 2L * Short.BYTES * boardHands.hands[0].length * boardHands.hands[1].length;
+    }
+
+    /*
+     * Counterfactual values of plr's hands if the pot is shown down on every
+     * runout. Opponent hands without weight are skipped.
+     */
+    public void computeCFValues(int plr, float[] oppWeights, float halfPot, float[] result) {
+        int[] hands = boardHands.hands[plr];
+        int[] oppHands = boardHands.hands[1 - plr];
+        float amount = halfPot * runoutProbability;
+
+        Arrays.fill(result, 0, boardHands.numHands[plr], 0);
+
+        // the values of the live hands are summed at the front of result
+        for (int j = 0; j < oppHands.length; j++) {
+            float oppWeight = oppWeights[oppHands[j]];
+            if (oppWeight != 0)
+                FloatKernels.accumulateScaled(result, results[plr], j * hands.length, oppWeight * amount,
+                        hands.length);
+        }
+
+        // and moved to their hands from the back, hands[i] >= i, so no value is overwritten before it is moved
+        for (int i = hands.length - 1; i >= 0; i--) {
+            float value = result[i];
+            result[i] = 0;
+            result[hands[i]] = value;
+        }
+    }
+}
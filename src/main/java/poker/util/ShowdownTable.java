@@ -0,0 +1,100 @@
+package poker.util;
+
+import java.util.Arrays;
+
+import poker.evaluation.BitboardEvaluator;
+
+/*
+ * Hands of both players on a river board, without the ones overlapping it, as
+ * parallel primitive arrays sorted by hand strength. Equal ranks form groups
+ * shared by both players: the entries of player plr in group g are
+ * [groupStart[plr][g], groupStart[plr][g + 1]), groups ascend in strength and
+ * entries within a group ascend in hand index.
+ */
+public class ShowdownTable {
+
+    public final int numGroups;
+
+    // per player and entry, the index of the hand in the range and its two cards
+    public final int[][] hands = new int[2][];
+    public final byte[][] cards = new byte[2][];
+
+    public final int[][] groupStart = new int[2][];
+
+    public ShowdownTable(long board, byte[] oopHands, byte[] ipHands) {
+        long[][] keys = { sortedKeys(board, oopHands), sortedKeys(board, ipHands) };
+
+        // ranks of both players merged, without duplicates
+        int[] ranks = new int[keys[0].length + keys[1].length];
+        int numRanks = 0;
+        for (int plr = 0; plr < 2; plr++) {
+            for (long key : keys[plr])
+                ranks[numRanks++] = (int) (key >> 32);
+        }
+        Arrays.sort(ranks, 0, numRanks);
+
+        int groups = 0;
+        for (int i = 0; i < numRanks; i++) {
+            if (groups == 0 || ranks[i] != ranks[groups - 1])
+                ranks[groups++] = ranks[i];
+        }
+        this.numGroups = groups;
+
+        for (int plr = 0; plr < 2; plr++) {
+            byte[] rangeHands = plr == 0 ? oopHands : ipHands;
+            int numEntries = keys[plr].length;
+
+            hands[plr] = new int[numEntries];
+            cards[plr] = new byte[2 * numEntries];
+            groupStart[plr] = new int[numGroups + 1];
+
+            int g = 0;
+            for (int i = 0; i < numEntries; i++) {
+                int rank = (int) (keys[plr][i] >> 32);
+                int h = (int) keys[plr][i];
+
+                while (ranks[g] != rank)
+                    groupStart[plr][++g] = i;
+
+                hands[plr][i] = h;
+                cards[plr][2 * i] = rangeHands[2 * h];
+                cards[plr][2 * i + 1] = rangeHands[2 * h + 1];
+            }
+            while (g < numGroups)
+                groupStart[plr][++g] = numEntries;
+        }
+    }
+
+    // rank in the upper and hand index in the lower half, so sorting is stable in the hand index
+    private static long[] sortedKeys(long board, byte[] rangeHands) {
+        int numHands = rangeHands.length / 2;
+        long[] keys = new long[numHands];
+        int numKeys = 0;
+
+        for (int h = 0; h < numHands; h++) {
+            byte card1 = rangeHands[2 * h];
+            byte card2 = rangeHands[2 * h + 1];
+
+            if (CardUtility.overlapBoard(board, card1, card2))
+                continue;
+
+            keys[numKeys++] = (long) BitboardEvaluator.getHandValue(card1, card2, board) << 32 | h;
+        }
+
+        keys = Arrays.copyOf(keys, numKeys);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    // heap size of the arrays and headers, used by the cache budget
+    public long getByteSize() {
+        long bytes = 64;
+        for (int plr = 0; plr < 2; plr++)
+            bytes += 48 + 4L * hands[plr].length + cards[plr].length + 4L * groupStart[plr].length;
+        return bytes;
+    }
+
+    public int getNumEntries(int plr) {
+        return hands[plr].length;
+    }
+}
@@ -0,0 +1,237 @@
+package poker.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import poker.SolverConfig;
+
+/*
+ * Showdown tables of all solves of the JVM, keyed by board and the ranges they
+ * were built for. RangeManagers with the same hands get the same ranges id and
+ * share their tables. The cache is limited to SolverConfig.SHOWDOWN_TABLE_CACHE_BYTES,
+ * over it boards are evicted in clock order, boards used since the clock hand
+ * last passed them get a second chance.
+ *
+ * Only the most recently used MAX_RANGES_IDS ranges keep their id. Ranges that
+ * come back after that get a new id and build their tables again, the tables
+ * of the old id are evicted like unused ones.
+ *
+ * The cache is split into segments of open addressed tables. Lookups do not
+ * lock, they can miss an entry that is being moved, and then retry under the
+ * segment's lock. A missing table is built under that lock, so it is built once.
+ */
+public class ShowdownTableCache {
+
+    private static final ShowdownTableCache INSTANCE = new ShowdownTableCache(
+            SolverConfig.SHOWDOWN_TABLE_CACHE_BYTES);
+
+    private static final int NUM_SEGMENTS = 64;
+
+    // a key holds the cards of the hands of both ranges, about 5 KB for full ranges
+    private static final int MAX_RANGES_IDS = 256;
+
+    public static ShowdownTableCache getInstance() {
+        return INSTANCE;
+    }
+
+    private static final class Entry {
+        final long board;
+        final int rangesId;
+        final ShowdownTable table;
+        final long bytes;
+
+        // set on every hit, cleared when the clock hand passes
+        volatile boolean referenced;
+
+        Entry(long board, int rangesId, ShowdownTable table) {
+            this.board = board;
+            this.rangesId = rangesId;
+            this.table = table;
+            this.bytes = table.getByteSize();
+        }
+    }
+
+    private final class Segment {
+        // linear probing, capacity is a power of two and at least twice the size
+        volatile Entry[] entries = new Entry[16];
+        int size;
+        long bytes;
+        int clockHand;
+
+        final long maxBytes;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        Entry find(long board, int rangesId, int hash) {
+            Entry[] entries = this.entries;
+            int mask = entries.length - 1;
+
+            for (int i = 0, slot = hash & mask; i < entries.length; i++, slot = slot + 1 & mask) {
+                Entry entry = entries[slot];
+                if (entry == null)
+                    return null;
+                if (entry.board == board && entry.rangesId == rangesId)
+                    return entry;
+            }
+            return null;
+        }
+
+        // called with the lock held
+        void insert(Entry entry, int hash) {
+            while (bytes + entry.bytes > maxBytes && size > 0)
+                evict();
+
+            if (2 * (size + 1) > entries.length)
+                resize();
+
+            place(entries, entry, hash);
+            size++;
+            bytes += entry.bytes;
+        }
+
+        private void place(Entry[] entries, Entry entry, int hash) {
+            int mask = entries.length - 1;
+            int slot = hash & mask;
+            while (entries[slot] != null)
+                slot = slot + 1 & mask;
+            entries[slot] = entry;
+        }
+
+        private void resize() {
+            Entry[] resized = new Entry[2 * entries.length];
+            for (Entry entry : entries) {
+                if (entry != null)
+                    place(resized, entry, hash(entry.board, entry.rangesId));
+            }
+            clockHand = 0;
+            entries = resized;
+        }
+
+        // advances the clock hand to the first entry not referenced since its last pass and removes it
+        private void evict() {
+            Entry[] entries = this.entries;
+            int mask = entries.length - 1;
+
+            while (true) {
+                Entry entry = entries[clockHand];
+                if (entry != null) {
+                    if (!entry.referenced) {
+                        remove(entries, clockHand);
+                        size--;
+                        bytes -= entry.bytes;
+                        evictions.increment();
+                        return;
+                    }
+                    entry.referenced = false;
+                }
+                clockHand = clockHand + 1 & mask;
+            }
+        }
+
+        // shifts the following entries of the probe sequence back, so no lookup stops at the hole
+        private void remove(Entry[] entries, int slot) {
+            int mask = entries.length - 1;
+            int hole = slot;
+            entries[hole] = null;
+
+            for (int next = hole + 1 & mask; entries[next] != null; next = next + 1 & mask) {
+                int home = hash(entries[next].board, entries[next].rangesId) & mask;
+
+                // the entry can move to the hole if the hole lies between its home slot and its slot
+                if ((next - home & mask) >= (next - hole & mask)) {
+                    entries[hole] = entries[next];
+                    entries[next] = null;
+                    hole = next;
+                }
+            }
+        }
+    }
+
+    private final Segment[] segments = new Segment[NUM_SEGMENTS];
+    // in access order, guarded by itself
+    private final Map<String, Integer> rangesIds = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_RANGES_IDS;
+        }
+    };
+    private final AtomicInteger nextRangesId = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    ShowdownTableCache(long maxBytes) {
+        for (int i = 0; i < NUM_SEGMENTS; i++)
+            segments[i] = new Segment(maxBytes / NUM_SEGMENTS);
+    }
+
+    // the same id for the same hands, tables do not depend on the weights
+    public int getRangesId(byte[] oopHands, byte[] ipHands) {
+        String key = new String(oopHands, StandardCharsets.ISO_8859_1) + "|"
+                + new String(ipHands, StandardCharsets.ISO_8859_1);
+        synchronized (rangesIds) {
+            return rangesIds.computeIfAbsent(key, k -> nextRangesId.getAndIncrement());
+        }
+    }
+
+    public ShowdownTable get(long board, int rangesId, byte[] oopHands, byte[] ipHands) {
+        int hash = hash(board, rangesId);
+        Segment segment = segments[hash >>> 26];
+
+        Entry entry = segment.find(board, rangesId, hash);
+        if (entry == null) {
+            synchronized (segment) {
+                entry = segment.find(board, rangesId, hash);
+                if (entry == null) {
+                    misses.increment();
+                    entry = new Entry(board, rangesId, new ShowdownTable(board, oopHands, ipHands));
+                    segment.insert(entry, hash);
+                    return entry.table;
+                }
+            }
+        }
+
+        hits.increment();
+        if (!entry.referenced)
+            entry.referenced = true;
+        return entry.table;
+    }
+
+    // the upper 6 bits pick the segment, the lower ones the slot
+    private static int hash(long board, int rangesId) {
+        long hash = (board ^ (long) rangesId << 52) * 0x9e3779b97f4a7c15L;
+        return (int) (hash >>> 32);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // approximate while tables are added
+    public long getByteSize() {
+        long bytes = 0;
+        for (Segment segment : segments)
+            bytes += segment.bytes;
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + ", bytes="
+                + getByteSize();
+    }
+}
@@ -0,0 +1,86 @@
+package poker.evaluation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import poker.SolverConfig;
+import poker.util.CardUtility;
+
+class BitboardEvaluatorTest {
+
+    /*
+     * Evaluates all 133,784,560 7 card hands with both evaluators and checks
+     * that they order them the same way: every HandEvaluator value has to map
+     * to a single value of BitboardEvaluator, and both have to ascend together.
+     */
+    @Test
+    void ordersAllHandsLikeHandEvaluator(@TempDir Path tempDir) throws IOException {
+        HandEvaluator evaluator = new HandEvaluator(findTable(tempDir));
+        assertTrue(evaluator.isLoaded(), "no HandRanks table");
+
+        int[] values = new int[10 << 12];
+        long count = 0;
+
+        for (int c0 = 0; c0 < 46; c0++) {
+            int u0 = evaluator.HR.get(53 + c0 + 1);
+            for (int c1 = c0 + 1; c1 < 47; c1++) {
+                int u1 = evaluator.HR.get(u0 + c1 + 1);
+                for (int c2 = c1 + 1; c2 < 48; c2++) {
+                    int u2 = evaluator.HR.get(u1 + c2 + 1);
+                    for (int c3 = c2 + 1; c3 < 49; c3++) {
+                        int u3 = evaluator.HR.get(u2 + c3 + 1);
+                        for (int c4 = c3 + 1; c4 < 50; c4++) {
+                            int u4 = evaluator.HR.get(u3 + c4 + 1);
+                            long cards4 = 1L << c0 | 1L << c1 | 1L << c2 | 1L << c3 | 1L << c4;
+                            for (int c5 = c4 + 1; c5 < 51; c5++) {
+                                int u5 = evaluator.HR.get(u4 + c5 + 1);
+                                for (int c6 = c5 + 1; c6 < 52; c6++) {
+                                    int handRank = evaluator.HR.get(u5 + c6 + 1);
+                                    long cards = cards4 | 1L << c5 | 1L << c6;
+                                    int value = BitboardEvaluator.getHandValue(cards);
+
+                                    if (values[handRank] == 0)
+                                        values[handRank] = value;
+                                    else if (values[handRank] != value)
+                                        fail("different values for " + CardUtility.boardToString(cards));
+                                    count++;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        assertEquals(133784560, count);
+
+        int previous = 0;
+        for (int handRank = 0; handRank < values.length; handRank++) {
+            if (values[handRank] == 0)
+                continue;
+            if (values[handRank] <= previous)
+                fail("different order at HandEvaluator value " + handRank);
+            previous = values[handRank];
+        }
+    }
+
+    // the table of the configured paths, without generating one in the cache. Otherwise one for the test only
+    private static Path findTable(Path tempDir) throws IOException {
+        for (String table : new String[] { SolverConfig.HAND_RANKS_PATH, SolverConfig.HAND_RANKS_CACHE_PATH }) {
+            Path path = Path.of(table);
+            if (Files.exists(path))
+                return path;
+        }
+
+        Path path = tempDir.resolve("HandRanks.dat");
+        HandRanksGenerator.generate(path);
+        return path;
+    }
+}
@@ -0,0 +1,129 @@
+package poker.tree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import poker.SolverConfig;
+import poker.util.CardUtility;
+import poker.util.RangeManager;
+
+class SkipUnreachedSubtreesTest {
+
+    static final int ITERATIONS = 300;
+
+    @Test
+    void compiledTreeMatchesFullTraversal() {
+        compareWithFullTraversal(true);
+    }
+
+    @Test
+    void objectTreeMatchesFullTraversal() {
+        compareWithFullTraversal(false);
+    }
+
+    /*
+     * A river spot with a polarized out of position range against bluff
+     * catchers, which never bet when checked to. The traversals of the out of
+     * position player skip that subtree and leave its updates to the
+     * trainables. The average strategies of all nodes, the skipped ones
+     * included, have to end up as if every subtree had been traversed.
+     */
+    private static void compareWithFullTraversal(boolean compiledTree) {
+        boolean compiled = SolverConfig.COMPILED_TREE;
+        boolean keepObjectTree = SolverConfig.KEEP_OBJECT_TREE;
+        boolean skip = SolverConfig.SKIP_UNREACHED_SUBTREES;
+
+        try {
+            // the strategies are read through the object graph, whose trainables are views into the slab
+            SolverConfig.COMPILED_TREE = compiledTree;
+            SolverConfig.KEEP_OBJECT_TREE = true;
+
+            SolverConfig.SKIP_UNREACHED_SUBTREES = false;
+            List<float[]> expected = collectAverageStrategies(solve());
+
+            SolverConfig.SKIP_UNREACHED_SUBTREES = true;
+            GameTreeNode root = solve();
+            List<float[]> actual = collectAverageStrategies(root);
+
+            // the check is answered by a check only, so the bet's subtree was skipped
+            ActionNode afterCheck = (ActionNode) root.children.get(root.edgeLabel.indexOf("CHECK"));
+            assertTrue(isNeverPlayed(afterCheck, afterCheck.edgeLabel.indexOf("bet 75")));
+
+            assertEquals(expected.size(), actual.size());
+            for (int node = 0; node < expected.size(); node++) {
+                for (int i = 0; i < expected.get(node).length; i++)
+                    assertEquals(expected.get(node)[i], actual.get(node)[i], 1e-7f, "node " + node + ", entry " + i);
+            }
+        } finally {
+            SolverConfig.COMPILED_TREE = compiled;
+            SolverConfig.KEEP_OBJECT_TREE = keepObjectTree;
+            SolverConfig.SKIP_UNREACHED_SUBTREES = skip;
+        }
+    }
+
+    private static GameTreeNode solve() {
+        GameState gameState = new GameState(Street.FLOP,
+                CardUtility.boardArrToLong(CardUtility.cardFromString("Qs"), CardUtility.cardFromString("Jh"),
+                        CardUtility.cardFromString("2h")),
+                100, new int[] { 400, 400 });
+        gameState = gameState.finishStreet(CardUtility.cardFromString("7c"));
+        gameState = gameState.finishStreet(CardUtility.cardFromString("3d"));
+
+        GameTreeBuildSettings settings = new GameTreeBuildSettings();
+        settings.riverBetSizes = new float[] { 0.75f };
+        settings.riverRaiseSizes = new float[] { 0.5f };
+
+        RangeManager rangeManager = new RangeManager("QQ,JJ,K9,K8,T5", "AQ,KQ,KJ,A2");
+
+        GameTreeBuilder builder = new GameTreeBuilder(gameState, settings, rangeManager);
+        builder.build();
+
+        GameTreeNode root = builder.getRoot();
+        CompiledGameTree compiledTree = builder.getCompiledTree();
+
+        int plr = 0;
+        for (int itr = 1; itr <= ITERATIONS; itr++, plr = 1 - plr) {
+            if (compiledTree != null)
+                compiledTree.computeCFValues(plr, rangeManager.getInitialWeights(1 - plr), itr);
+            else
+                root.computeCFValuesRecursive(plr, rangeManager.getInitialWeights(1 - plr), itr);
+        }
+
+        if (compiledTree != null)
+            compiledTree.flushSkippedIterations();
+        else
+            root.flushSkippedIterations();
+        return root;
+    }
+
+    // no hand of the node's trainable plays the action in the current strategy
+    private static boolean isNeverPlayed(ActionNode node, int action) {
+        float[] strategy = node.getTrainable().getStrategy();
+        int numHands = strategy.length / node.children.size();
+
+        for (int h = 0; h < numHands; h++) {
+            if (strategy[action * numHands + h] != 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static List<float[]> collectAverageStrategies(GameTreeNode root) {
+        List<float[]> strategies = new ArrayList<>();
+        List<GameTreeNode> nodes = new ArrayList<>();
+        nodes.add(root);
+
+        for (int i = 0; i < nodes.size(); i++) {
+            GameTreeNode node = nodes.get(i);
+            if (node instanceof ActionNode)
+                strategies.add(((ActionNode) node).getAverageStrategy());
+            nodes.addAll(node.children);
+        }
+        return strategies;
+    }
+}